@@ -0,0 +1,270 @@
+import org.apache.hadoop.io.Text;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable parser of a single line of the Google Syntactic Ngrams Biarcs corpus.
+ * The UTF-8 bytes of the line are read directly: fields and tokens are located by offsets, and the letters of every
+ * word and POS tag are copied in a single pass into buffers that are reused between lines, so parsing a line does
+ * not allocate.
+ * <p>
+ * A line is accepted under the same rules the String based parsing of Step1 applied: the second tab separated field
+ * is split on spaces, every token must have exactly 4 '/' separated components (trailing empty components are
+ * ignored), and the word and the POS tag must keep at least one letter once every non-letter is removed. Lines with
+ * less than two noun tokens are rejected as well, as no noun pair can be found in them.
+ */
+class BiarcParser {
+
+    private static final byte TAB = '\t';
+    private static final byte SPACE = ' ';
+    private static final byte SLASH = '/';
+    private static final int INITIAL_TOKENS = 16;
+
+    private byte[] line;
+    private int size;
+    private int numOfNouns;
+
+    private char[] letters;
+    private int lettersLength;
+    private int[] wordStart;
+    private int[] wordLength;
+    private int[] tagStart;
+    private int[] tagLength;
+    private int[] depStart;
+    private int[] depLength;
+    private int[] heads;
+    private boolean[] nouns;
+
+    BiarcParser() {
+        letters = new char[INITIAL_TOKENS * 16];
+        allocateTokens(INITIAL_TOKENS);
+    }
+
+    /**
+     * Parses a line of the corpus into the buffers of this parser, overwriting the previous line.
+     *
+     * @param value a line in the format head_word \t syntactic-ngram \t total_count \t counts_by_year
+     * @return true if the line is a valid biarc with at least two nouns, false if it should be skipped.
+     */
+    boolean parse(Text value) {
+        line = value.getBytes();
+        int length = value.getLength();
+        size = 0;
+        numOfNouns = 0;
+        lettersLength = 0;
+
+        int start = indexOf(TAB, 0, length);
+        if (start < 0)
+            return false;
+        start++;
+        int end = indexOf(TAB, start, length);
+        if (end < 0)
+            end = length;
+        // Trailing empty tokens are dropped, exactly as String.split(" ") did
+        while (end > start && line[end - 1] == SPACE)
+            end--;
+        if (start == end)
+            return false;
+
+        int tokenStart = start;
+        while (tokenStart <= end) {
+            int tokenEnd = indexOf(SPACE, tokenStart, end);
+            if (tokenEnd < 0)
+                tokenEnd = end;
+            if (!parseToken(tokenStart, tokenEnd))
+                return false;
+            tokenStart = tokenEnd + 1;
+        }
+
+        for (int i = 0; i < size; i++)
+            if (heads[i] > size)
+                return false;
+        return numOfNouns >= 2;
+    }
+
+    /**
+     * Parses a single word/pos-tag/dep-label/head-index token into the next free slot of the buffers.
+     *
+     * @param start the offset of the first byte of the token.
+     * @param end   the offset after the last byte of the token.
+     * @return true if the token is valid.
+     */
+    private boolean parseToken(int start, int end) {
+        // Trailing empty components are dropped, exactly as String.split("/") did
+        while (end > start && line[end - 1] == SLASH)
+            end--;
+        int firstSlash = indexOf(SLASH, start, end);
+        int secondSlash = firstSlash < 0 ? -1 : indexOf(SLASH, firstSlash + 1, end);
+        int thirdSlash = secondSlash < 0 ? -1 : indexOf(SLASH, secondSlash + 1, end);
+        if (thirdSlash < 0 || indexOf(SLASH, thirdSlash + 1, end) >= 0)
+            return false;
+
+        if (size == heads.length)
+            allocateTokens(size * 2);
+        ensureLetters(end - start);
+
+        wordStart[size] = lettersLength;
+        wordLength[size] = copyLetters(start, firstSlash);
+        tagStart[size] = lettersLength;
+        tagLength[size] = copyLetters(firstSlash + 1, secondSlash);
+        if (wordLength[size] == 0 || tagLength[size] == 0)
+            return false;
+        depStart[size] = secondSlash + 1;
+        depLength[size] = thirdSlash - secondSlash - 1;
+        heads[size] = parseHead(thirdSlash + 1, end);
+        nouns[size] = isNounTag(tagStart[size], tagLength[size]);
+        if (nouns[size])
+            numOfNouns++;
+        size++;
+        return true;
+    }
+
+    /**
+     * Copies the ASCII letters of a slice of the line to the letters buffer, dropping every other character.
+     *
+     * @return the number of letters copied.
+     */
+    private int copyLetters(int start, int end) {
+        int copied = 0;
+        for (int i = start; i < end; i++) {
+            byte c = line[i];
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                letters[lettersLength++] = (char) c;
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Parses the head index of a token. Like Integer.parseInt, an optional sign is accepted; an unparsable index is
+     * treated as 0, which marks a root.
+     */
+    private int parseHead(int start, int end) {
+        boolean negative = false;
+        int i = start;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+        if (i == end)
+            return 0;
+        long head = 0;
+        for (; i < end; i++) {
+            byte c = line[i];
+            if (c < '0' || c > '9')
+                return 0;
+            head = head * 10 + (c - '0');
+            if (head > Integer.MAX_VALUE + 1L)
+                return 0;
+        }
+        head = negative ? -head : head;
+        return head > Integer.MAX_VALUE ? 0 : (int) head;
+    }
+
+    private boolean isNounTag(int start, int length) {
+        if (length < 2 || length > 4 || letters[start] != 'N' || letters[start + 1] != 'N')
+            return false;
+        if (length == 2)
+            return true;
+        if (length == 3)
+            return letters[start + 2] == 'S' || letters[start + 2] == 'P';
+        return letters[start + 2] == 'P' && letters[start + 3] == 'S';
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (line[i] == b)
+                return i;
+        return -1;
+    }
+
+    private void ensureLetters(int extra) {
+        if (lettersLength + extra > letters.length) {
+            char[] newLetters = new char[Math.max(letters.length * 2, lettersLength + extra)];
+            System.arraycopy(letters, 0, newLetters, 0, lettersLength);
+            letters = newLetters;
+        }
+    }
+
+    private void allocateTokens(int capacity) {
+        wordStart = grow(wordStart, capacity);
+        wordLength = grow(wordLength, capacity);
+        tagStart = grow(tagStart, capacity);
+        tagLength = grow(tagLength, capacity);
+        depStart = grow(depStart, capacity);
+        depLength = grow(depLength, capacity);
+        heads = grow(heads, capacity);
+        boolean[] newNouns = new boolean[capacity];
+        if (nouns != null)
+            System.arraycopy(nouns, 0, newNouns, 0, size);
+        nouns = newNouns;
+    }
+
+    private int[] grow(int[] array, int capacity) {
+        int[] newArray = new int[capacity];
+        if (array != null)
+            System.arraycopy(array, 0, newArray, 0, size);
+        return newArray;
+    }
+
+    /**
+     * @return the number of tokens in the last parsed line.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of noun tokens in the last parsed line.
+     */
+    int getNumOfNouns() {
+        return numOfNouns;
+    }
+
+    boolean isNoun(int i) {
+        return nouns[i];
+    }
+
+    /**
+     * @return the buffer holding the letters of the words and POS tags of the last parsed line.
+     */
+    char[] getLetters() {
+        return letters;
+    }
+
+    int getWordStart(int i) {
+        return wordStart[i];
+    }
+
+    int getWordLength(int i) {
+        return wordLength[i];
+    }
+
+    int getTagStart(int i) {
+        return tagStart[i];
+    }
+
+    int getTagLength(int i) {
+        return tagLength[i];
+    }
+
+    /**
+     * @return the head index of the i-th token, 0 for a root.
+     */
+    int getHead(int i) {
+        return heads[i];
+    }
+
+    String getWord(int i) {
+        return new String(letters, wordStart[i], wordLength[i]);
+    }
+
+    String getPosTag(int i) {
+        return new String(letters, tagStart[i], tagLength[i]);
+    }
+
+    String getDepLabel(int i) {
+        return new String(line, depStart[i], depLength[i], StandardCharsets.UTF_8);
+    }
+}
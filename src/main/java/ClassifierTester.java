@@ -19,7 +19,15 @@ public class ClassifierTester {
     private static final String HEADER1 = "classifier_input";
     private static final String HEADER2 = "classifier_output";
 
+    /**
+     * Evaluates the classifier on an ARFF file of PostProcessor, by default the one of the last run. Passing the files
+     * of runs in different modes (such as the feature dictionary and feature hashing) compares their accuracy.
+     *
+     * @param args optional: the ARFF file, and the ARFF file with the noun pairs.
+     */
     public static void main(String[] args) throws Exception {
+        String inputFile = args.length > 0 ? args[0] : HEADER1 + "/processed_single_corpus.arff";
+        String inputWithWordsFile = args.length > 1 ? args[1] : HEADER1 + "/processed_single_corpus_with_words.arff";
 
         HashMap<String, String> tpSet = new HashMap<>(10); // true positives
         HashMap<String, String> fpSet = new HashMap<>(10); // false positives
@@ -31,13 +39,13 @@ public class ClassifierTester {
         createDir(HEADER2);
 
         // Read in the tagged dataset and perform cross-validation
-        Instances taggedSet = readDataset(HEADER1 + "/processed_single_corpus.arff");
+        Instances taggedSet = readDataset(inputFile);
         Classifier tree = new IBk();
         Evaluation crossValidation = crossValidate(tree, taggedSet, 10, 1);
         System.out.println(crossValidation.toSummaryString("\nCross validation - Results\n\n", false));
         System.out.println(crossValidation.toClassDetailsString("\nCross validation - Statistics\n\n"));
 
-        trainAndTest(tpSet, fpSet, tnSet, fnSet, taggedSet, tree); // train and test
+        trainAndTest(tpSet, fpSet, tnSet, fnSet, taggedSet, tree, inputFile, inputWithWordsFile); // train and test
 
         analysisData(tpSet, fpSet, tnSet, fnSet);
 
@@ -54,15 +62,17 @@ public class ClassifierTester {
      * @param fnSet HashMap to store information about FN cases
      * @param taggedSet Instances object representing the training set
      * @param tree Classifier object to use for classification
+     * @param inputFile the ARFF file of the test set
+     * @param inputWithWordsFile the ARFF file of the test set with the noun pairs
      * @throws Exception if there is an error reading or writing data to files
      */
 
-    private static void trainAndTest(HashMap<String, String> tpSet, HashMap<String, String> fpSet, HashMap<String, String> tnSet, HashMap<String, String> fnSet, Instances taggedSet, Classifier tree) throws Exception {
+    private static void trainAndTest(HashMap<String, String> tpSet, HashMap<String, String> fpSet, HashMap<String, String> tnSet, HashMap<String, String> fnSet, Instances taggedSet, Classifier tree, String inputFile, String inputWithWordsFile) throws Exception {
         // build the classifier using the training set
         tree.buildClassifier(taggedSet);
 
         // read in the test set
-        Instances testInput = DataSource.read(HEADER1 + "/processed_single_corpus.arff");
+        Instances testInput = DataSource.read(inputFile);
         testInput.setClassIndex(taggedSet.numAttributes() - 1);
 
         // classify the test set
@@ -84,7 +94,7 @@ public class ClassifierTester {
         }
 
         // open the file containing the word pairs and vectors for the test set
-        BufferedReader br = new BufferedReader(new FileReader(HEADER1 + "/processed_single_corpus_with_words.arff"));
+        BufferedReader br = new BufferedReader(new FileReader(inputWithWordsFile));
 
         // skip all of the arff file header
         String line;
@@ -94,15 +104,15 @@ public class ClassifierTester {
         line = br.readLine();
         // iterate through the entries in the classified set
         for (int i = 0; i < taggedSet.size(); i++, line = br.readLine()) {
-            // get the truth values for the current entry in the training set and classified set
-            String trainSetEntry = taggedSet.get(i).toString();
-            String testSetEntry = classifiedSet.get(i).toString();
-            boolean trainTruthValue = trainSetEntry.substring(trainSetEntry.lastIndexOf(",") + 1).equals("true");
-            boolean testTruthValue = testSetEntry.substring(testSetEntry.lastIndexOf(",") + 1).equals("true");
+            // get the truth values for the current entry in the training set and classified set, read from the class
+            // attribute so both the dense and the sparse ARFF formats are understood
+            boolean trainTruthValue = taggedSet.get(i).stringValue(taggedSet.classIndex()).equals("true");
+            boolean testTruthValue = classifiedSet.get(i).stringValue(taggedSet.classIndex()).equals("true");
 
             // get the noun pair and vector for the current entry in the test set
-            String nounPair = line.substring(0, line.indexOf("\t"));
-            String vector = line.substring(line.indexOf("\t") + 1);
+            String[] nounPairAndVector = splitNounPair(line);
+            String nounPair = nounPairAndVector[0];
+            String vector = nounPairAndVector[1];
 
             // store the information in the appropriate HashMap
             if (trainTruthValue && testTruthValue && tpSet.size() < 10) {
@@ -117,6 +127,27 @@ public class ClassifierTester {
         }
     }
 
+    /**
+     * Splits a data line of the ARFF file with the noun pairs into its noun pair and its vector. A dense line is the
+     * noun pair and the vector separated by a tab, and a sparse line has the quoted noun pair as attribute 0.
+     *
+     * @param line the data line.
+     * @return the noun pair and the vector, sparse vectors keeping the indexes of the file.
+     */
+    static String[] splitNounPair(String line) {
+        if (!line.startsWith("{"))
+            return new String[]{line.substring(0, line.indexOf("\t")), line.substring(line.indexOf("\t") + 1)};
+        StringBuilder nounPair = new StringBuilder();
+        // The noun pair is quoted after "{0 ", with its quotes and backslashes escaped
+        int i = 4;
+        for (; line.charAt(i) != '\''; i++) {
+            if (line.charAt(i) == '\\')
+                i++;
+            nounPair.append(line.charAt(i));
+        }
+        return new String[]{nounPair.toString(), "{" + line.substring(i + 2)};
+    }
+
     /**
      * Performs cross-validation on a dataset using a classifier.
      * @param classifier the classifier to use for cross-validation
@@ -0,0 +1,87 @@
+import org.apache.hadoop.io.Writable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A count-min sketch of int counters: depth rows of width counters, every key adding to one counter of every row. The
+ * estimate of a key is the smallest of its counters, which is never below the true count and is above it only by the
+ * counts of the keys sharing all its counters. Sketches of the same size are merged by adding their counters.
+ * <p>
+ * The counter of a key in a row is picked from two halves of a 64 bit hash of the key (double hashing), so a key is
+ * only hashed once.
+ */
+class CountMinSketch implements Writable {
+
+    private int depth;
+    private int width;
+    private int[] counters;
+
+    CountMinSketch() {
+    }
+
+    CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        counters = new int[depth * width];
+    }
+
+    /**
+     * Adds to the count of a key.
+     *
+     * @param hash  a 64 bit hash of the key.
+     * @param count the count to add.
+     */
+    void add(long hash, int count) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            int column = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+            counters[row * width + column] += count;
+        }
+    }
+
+    /**
+     * @param hash a 64 bit hash of the key.
+     * @return the estimated count of the key.
+     */
+    int estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int column = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+            estimate = Math.min(estimate, counters[row * width + column]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Adds the counters of a sketch of the same size to the counters of this sketch.
+     */
+    void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width)
+            throw new IllegalArgumentException("Cannot merge a " + other.depth + "x" + other.width + " sketch into a " + depth + "x" + width + " sketch");
+        for (int i = 0; i < counters.length; i++)
+            counters[i] += other.counters[i];
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(depth);
+        out.writeInt(width);
+        for (int counter : counters)
+            out.writeInt(counter);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        depth = in.readInt();
+        width = in.readInt();
+        if (counters == null || counters.length != depth * width)
+            counters = new int[depth * width];
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = in.readInt();
+    }
+}
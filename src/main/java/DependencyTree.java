@@ -0,0 +1,209 @@
+/**
+ * The dependency tree of a syntactic Ngram, kept in parallel int arrays indexed by the position of the token in the
+ * Ngram. A single instance is reused for every record of a mapper: reset() overwrites the previous tree and the
+ * arrays only grow when a longer Ngram is met.
+ * <p>
+ * The tree is rooted at the last token whose head index is not positive (or at the first token if there is none),
+ * and tokens that cannot be reached from the root are not part of it: their depth is -1.
+ */
+class DependencyTree {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private int root;
+    private int[] parent;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] depth;
+    private int[] posCode;
+    private int[] queue;
+    private int[] pathCodes;
+    private final StringBuilder pathBuilder = new StringBuilder();
+
+    private BiarcParser parser;
+    private PosCodebook codebook;
+
+    DependencyTree() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Builds the tree of the biarc held by the parser, overwriting the previous tree.
+     *
+     * @param parser   a parser holding a successfully parsed biarc.
+     * @param codebook the codebook used to encode the POS tags.
+     */
+    void reset(BiarcParser parser, PosCodebook codebook) {
+        this.parser = parser;
+        this.codebook = codebook;
+        size = parser.size();
+        if (size > parent.length)
+            allocate(Math.max(size, parent.length * 2));
+
+        root = 0;
+        char[] letters = parser.getLetters();
+        for (int i = 0; i < size; i++) {
+            firstChild[i] = -1;
+            nextSibling[i] = -1;
+            depth[i] = -1;
+            posCode[i] = codebook.getCode(letters, parser.getTagStart(i), parser.getTagLength(i));
+            if (parser.getHead(i) <= 0)
+                root = i;
+        }
+        // Children are linked from the last token to the first, so every list ends up in token order
+        for (int i = size - 1; i >= 0; i--) {
+            parent[i] = parser.getHead(i) - 1;
+            if (i != root && parent[i] >= 0) {
+                nextSibling[i] = firstChild[parent[i]];
+                firstChild[parent[i]] = i;
+            }
+        }
+        parent[root] = -1;
+
+        // Breadth first walk from the root, which leaves every unreachable token at depth -1
+        int head = 0;
+        int tail = 0;
+        depth[root] = 0;
+        queue[tail++] = root;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                if (depth[child] < 0) {
+                    depth[child] = depth[node] + 1;
+                    queue[tail++] = child;
+                }
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        parent = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        depth = new int[capacity];
+        posCode = new int[capacity];
+        queue = new int[capacity];
+        pathCodes = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the parent of a node in the tree, -1 for the root.
+     */
+    int getParent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * @return the first child of a node, -1 if it has none.
+     */
+    int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * @return the next child of the parent of a node, -1 if it is the last one.
+     */
+    int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     * @return the depth of a node, 0 for the root and -1 for a token that is not reachable from the root.
+     */
+    int getDepth(int node) {
+        return depth[node];
+    }
+
+    int getPosCode(int node) {
+        return posCode[node];
+    }
+
+    boolean isNoun(int node) {
+        return codebook.isNoun(posCode[node]);
+    }
+
+    /**
+     * Appends the stemmed word of a node to a builder. Words are only stemmed when asked for.
+     *
+     * @param node      a node of the tree.
+     * @param stemCache the cache to stem the word with.
+     * @param builder   the builder the stemmed word is appended to.
+     */
+    void appendStemmedWord(int node, StemCache stemCache, StringBuilder builder) {
+        stemCache.appendStem(parser.getLetters(), parser.getWordStart(node), parser.getWordLength(node), builder);
+    }
+
+    /**
+     * Appends the component of a node in a dependency path to a builder. The component is the POS tag of the node
+     * alone (Method 1 in the README).
+     *
+     * @param node    a node of the tree.
+     * @param builder the builder the component is appended to.
+     */
+    void appendDependencyPathComponent(int node, StringBuilder builder) {
+        builder.append(codebook.getTag(posCode[node]));
+    }
+
+    /**
+     * Sets a path to the dependency path through a sequence of nodes. The path is packed into a long when it can be,
+     * and is only built as text when one of its tags is not a Penn Treebank tag or it is too long to be packed.
+     *
+     * @param path      the path to set.
+     * @param pathNodes the nodes of the path, from the first noun of the pair to the second one.
+     * @param length    the number of nodes in the path.
+     */
+    void setDependencyPath(PathWritable path, int[] pathNodes, int length) {
+        for (int i = 0; i < length; i++)
+            pathCodes[i] = posCode[pathNodes[i]];
+        if (path.setPacked(pathCodes, length))
+            return;
+        pathBuilder.setLength(0);
+        appendDependencyPathComponent(pathNodes[0], pathBuilder);
+        for (int i = 1; i < length; i++) {
+            pathBuilder.append(PathWritable.DELIMITER);
+            appendDependencyPathComponent(pathNodes[i], pathBuilder);
+        }
+        path.set(pathBuilder);
+    }
+
+    /**
+     * Sets a path to the dependency path of the words space through a sequence of nodes: the tag of the space, the POS
+     * tag of the first noun, the stemmed word and the POS tag of every inner node (Method 2 in the README) and the POS
+     * tag of the second noun. The characters of a word that delimit the paths and their counts in the output of Step1
+     * are replaced.
+     *
+     * @param path      the path to set.
+     * @param pathNodes the nodes of the path, from the first noun of the pair to the second one.
+     * @param length    the number of nodes in the path.
+     * @param stemCache the cache to stem the words with.
+     */
+    void setWordsDependencyPath(PathWritable path, int[] pathNodes, int length, StemCache stemCache) {
+        pathBuilder.setLength(0);
+        pathBuilder.append(FeatureSpaces.WORDS_PATH_TAG);
+        appendDependencyPathComponent(pathNodes[0], pathBuilder);
+        for (int i = 1; i < length; i++) {
+            pathBuilder.append(PathWritable.DELIMITER);
+            if (i < length - 1) {
+                int wordStart = pathBuilder.length();
+                appendStemmedWord(pathNodes[i], stemCache, pathBuilder);
+                for (int j = wordStart; j < pathBuilder.length(); j++) {
+                    char c = pathBuilder.charAt(j);
+                    if (c == Step1.Reducer1.DELIMITER_1.charAt(0) || c == Step1.Reducer1.DELIMITER_2.charAt(0) || c == '\t')
+                        pathBuilder.setCharAt(j, '_');
+                }
+                pathBuilder.append(PathWritable.DELIMITER);
+            }
+            appendDependencyPathComponent(pathNodes[i], pathBuilder);
+        }
+        path.set(pathBuilder);
+    }
+}
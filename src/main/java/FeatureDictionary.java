@@ -0,0 +1,149 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The dictionary of the features of Step2: every dependency path that met the DPmin condition in Step1, with the
+ * index of its feature in the features vector.
+ * <p>
+ * Reducer1 writes the paths it keeps to the "dictionary" side output of Step1, a sequence file of PathWritable keys
+ * holding the number of distinct noun pairs of every path. The driver of Step2 collects them, sorts them by their text
+ * and writes the dictionary, one path per line in the order of the features, so the index of a feature is the line of
+ * its path. The tasks of Step2 read the lines back into PathWritables, to look up the paths of the pairs as is. The
+ * dictionary is shipped to every reducer of Step2 through the distributed cache, which lets Step2 run any number of
+ * reducers with the same feature indexes.
+ * <p>
+ * With a list of DPmin thresholds, Reducer1 keeps the paths of the smallest one and counts their pairs exactly. The
+ * paths are sorted by the largest threshold they meet first, so the features of every threshold are a prefix of the
+ * dictionary: the vectors of a threshold are the vectors of the smallest one cut to its number of features, which
+ * lets a single run of both steps produce the datasets of every threshold.
+ */
+class FeatureDictionary {
+
+    /**
+     * Configuration key of the dictionary mode of Step2.
+     */
+    public static final String FEATURE_DICTIONARY = "FEATURE_DICTIONARY";
+    /**
+     * Configuration key of the number of reducers of Step2 in dictionary mode.
+     */
+    public static final String STEP2_REDUCERS = "STEP2_REDUCERS";
+    /**
+     * Configuration key of a comma separated list of DPmin thresholds, used instead of DPMIN when it is set.
+     */
+    public static final String DPMIN_LIST = "DPMIN_LIST";
+    public static final int DEFAULT_STEP2_REDUCERS = 10;
+    /**
+     * The named output of Step1 the paths of the dictionary are written to.
+     */
+    public static final String NAMED_OUTPUT = "dictionary";
+    /**
+     * The name of the dictionary in the working directory of the tasks.
+     */
+    public static final String CACHE_FILE_NAME = "features.dict";
+
+    /**
+     * @param conf the configuration of the job.
+     * @return the DPmin thresholds of DPMIN_LIST, sorted and distinct, or DPMIN alone if the list is not set.
+     */
+    static int[] getThresholds(Configuration conf) {
+        String list = conf.get(DPMIN_LIST, "");
+        if (list.trim().isEmpty())
+            return new int[]{conf.getInt(Step1.DPMIN, Step1.DEFAULT_DPMIN)};
+        TreeSet<Integer> thresholds = new TreeSet<>();
+        for (String threshold : list.split(","))
+            thresholds.add(Integer.parseInt(threshold.trim()));
+        return thresholds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Builds the dictionary from the side output files of Step1.
+     *
+     * @param sideOutputs a glob matching the side output files of the dictionary.
+     * @param dictionary  the file the dictionary is written to.
+     * @param conf        the configuration of the job.
+     * @return the number of features of every threshold of getThresholds(), the first one being the number of
+     * features in the dictionary.
+     * @throws IllegalStateException if a path of the side outputs meets no threshold, which happens when Step1 ran
+     *                               with other thresholds: the features would not fit the vectors of PostProcessor.
+     */
+    static int[] build(Path sideOutputs, Path dictionary, Configuration conf) throws IOException {
+        int[] thresholds = getThresholds(conf);
+        List<String> paths = new ArrayList<>();
+        Map<String, Integer> bands = new HashMap<>();
+        FileSystem fs = sideOutputs.getFileSystem(conf);
+        FileStatus[] files = fs.globStatus(sideOutputs);
+        if (files != null) {
+            for (FileStatus file : files) {
+                try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(file.getPath()))) {
+                    PathWritable path = new PathWritable();
+                    LongWritable nounPairs = new LongWritable();
+                    while (reader.next(path, nounPairs)) {
+                        // The band of a path is the number of thresholds it meets
+                        int band = 0;
+                        while (band < thresholds.length && nounPairs.get() >= thresholds[band])
+                            band++;
+                        String text = path.toString();
+                        paths.add(text);
+                        bands.put(text, band);
+                    }
+                }
+            }
+        }
+        // Sorted by band and then by path, so the indexes do not depend on the number of reducers of Step1 or on the
+        // order of their files, and the features of every threshold come first
+        paths.sort(Comparator.comparing((String path) -> -bands.get(path)).thenComparing(Comparator.naturalOrder()));
+        int[] numOfFeatures = new int[thresholds.length];
+        for (int band : bands.values())
+            for (int i = 0; i < band; i++)
+                numOfFeatures[i]++;
+        if (numOfFeatures[0] < paths.size())
+            throw new IllegalStateException((paths.size() - numOfFeatures[0]) + " paths of the dictionary of Step1 meet no DPmin threshold of "
+                    + Arrays.toString(thresholds) + ": " + Step1.DPMIN + " and " + DPMIN_LIST + " must be the ones of Step1");
+        FileSystem dictionaryFs = dictionary.getFileSystem(conf);
+        try (FSDataOutputStream out = dictionaryFs.create(dictionary, true);
+             BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (String path : paths)
+                bw.write(path + "\n");
+        }
+        System.out.println("Features of the DPmin thresholds " + Arrays.toString(thresholds) + ": " + Arrays.toString(numOfFeatures));
+        return numOfFeatures;
+    }
+
+    /**
+     * Reads the dictionary shipped through the distributed cache.
+     *
+     * @return a map of every path of the dictionary to the index of its feature.
+     */
+    static Map<PathWritable, Integer> readFromCache() throws IOException {
+        Map<PathWritable, Integer> indexes = new HashMap<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(CACHE_FILE_NAME), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                PathWritable path = new PathWritable();
+                path.set(line);
+                indexes.put(path, indexes.size());
+            }
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,175 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * The feature hashing mode of the pipeline, an alternative to the feature dictionary: every dependency path is mapped
+ * to one of 2^k features by a seeded hash of the path, optionally with a sign taken from the same hash, so the features
+ * vectors are built without any list of the paths.
+ * <p>
+ * The DPmin condition is approximated with a count-min sketch of the number of noun pairs of every path. Every noun
+ * pair reaches a single reducer of Step1 with all its paths, so each reducer adds one to every distinct path of each of
+ * its pairs, and writes its sketch to the "sketch" side output. Mapper1 then has no path records to write. The driver
+ * of Step2 merges the sketches and ships the result to the tasks of Step2 through the distributed cache, where a path
+ * is kept if its estimate meets DPmin. The estimate is never below the true number of pairs of the path, so every path
+ * of the exact mode is kept, along with a few paths whose estimate was raised by collisions.
+ */
+class FeatureHashing {
+
+    /**
+     * Configuration key of the feature hashing mode of Step1 and Step2.
+     */
+    public static final String FEATURE_HASHING = "FEATURE_HASHING";
+    /**
+     * Configuration key of the number of bits k of the hashed feature space of 2^k features.
+     */
+    public static final String FEATURE_HASHING_BITS = "FEATURE_HASHING_BITS";
+    public static final int DEFAULT_FEATURE_HASHING_BITS = 18;
+    /**
+     * Configuration key of the signed feature hashing, where the occurrences of a path are added to its feature with
+     * a sign of +1 or -1 so the collisions cancel out on average.
+     */
+    public static final String FEATURE_HASHING_SIGNED = "FEATURE_HASHING_SIGNED";
+    /**
+     * Configuration key of the seed of the hash of the features.
+     */
+    public static final String FEATURE_HASHING_SEED = "FEATURE_HASHING_SEED";
+    public static final long DEFAULT_FEATURE_HASHING_SEED = 0x9e3779b97f4a7c15L;
+    /**
+     * Configuration keys of the size of the count-min sketch of the pairs of the paths.
+     */
+    public static final String PATH_SKETCH_DEPTH = "PATH_SKETCH_DEPTH";
+    public static final int DEFAULT_PATH_SKETCH_DEPTH = 4;
+    public static final String PATH_SKETCH_WIDTH = "PATH_SKETCH_WIDTH";
+    public static final int DEFAULT_PATH_SKETCH_WIDTH = 1 << 18;
+    /**
+     * The named output of Step1 the sketches of the reducers are written to.
+     */
+    public static final String NAMED_OUTPUT = "sketch";
+    /**
+     * The name of the merged sketch in the working directory of the tasks.
+     */
+    public static final String CACHE_FILE_NAME = "paths.sketch";
+
+    private final int bits;
+    private final boolean signed;
+    private final long seed;
+    private final int dpMin;
+    private final CountMinSketch sketch;
+
+    /**
+     * @param conf   the configuration of the job.
+     * @param sketch the merged sketch of the pairs of the paths.
+     */
+    FeatureHashing(Configuration conf, CountMinSketch sketch) {
+        bits = conf.getInt(FEATURE_HASHING_BITS, DEFAULT_FEATURE_HASHING_BITS);
+        signed = conf.getBoolean(FEATURE_HASHING_SIGNED, false);
+        seed = conf.getLong(FEATURE_HASHING_SEED, DEFAULT_FEATURE_HASHING_SEED);
+        dpMin = conf.getInt(Step1.DPMIN, Step1.DEFAULT_DPMIN);
+        this.sketch = sketch;
+    }
+
+    /**
+     * @return the size of the hashed feature space.
+     */
+    static int getNumFeatures(Configuration conf) {
+        return 1 << conf.getInt(FEATURE_HASHING_BITS, DEFAULT_FEATURE_HASHING_BITS);
+    }
+
+    int getNumFeatures() {
+        return 1 << bits;
+    }
+
+    /**
+     * @param path a dependency path.
+     * @return the unseeded 64 bit hash of the bytes of the path, the key of the path in the sketch. The hashes of the
+     * packed paths are inverted, so a packed path and a text path of the same bytes do not share a key.
+     */
+    static long hash(PathWritable path) {
+        long hash = HypernymIndex.fingerprint(path.getBytes(), path.getLength());
+        return path.isPacked() ? ~hash : hash;
+    }
+
+    /**
+     * @param pathHash the hash of a path.
+     * @return true if the path meets the approximate DPmin condition.
+     */
+    boolean isKept(long pathHash) {
+        return sketch.estimate(pathHash) >= dpMin;
+    }
+
+    /**
+     * @param pathHash the hash of a path.
+     * @return the index of the feature of the path, from the top k bits of its seeded hash.
+     */
+    int index(long pathHash) {
+        return (int) (seeded(pathHash) >>> (64 - bits));
+    }
+
+    /**
+     * @param pathHash the hash of a path.
+     * @return the sign of the occurrences of the path in its feature, from the lowest bit of its seeded hash.
+     */
+    int sign(long pathHash) {
+        return signed && (seeded(pathHash) & 1) != 0 ? -1 : 1;
+    }
+
+    private long seeded(long pathHash) {
+        long hash = pathHash ^ seed;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Merges the sketches of the reducers of Step1 into a single sketch, written to a file from which it is added to
+     * the distributed cache.
+     *
+     * @param sketches a glob matching the side output files of the sketches.
+     * @param merged   the file the merged sketch is written to.
+     * @param conf     the configuration of the job.
+     */
+    static void mergeSketches(Path sketches, Path merged, Configuration conf) throws IOException {
+        CountMinSketch sketch = new CountMinSketch(conf.getInt(PATH_SKETCH_DEPTH, DEFAULT_PATH_SKETCH_DEPTH), conf.getInt(PATH_SKETCH_WIDTH, DEFAULT_PATH_SKETCH_WIDTH));
+        FileSystem fs = sketches.getFileSystem(conf);
+        FileStatus[] files = fs.globStatus(sketches);
+        if (files != null) {
+            CountMinSketch reducerSketch = new CountMinSketch();
+            for (FileStatus file : files) {
+                try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(file.getPath()))) {
+                    while (reader.next(NullWritable.get(), reducerSketch))
+                        sketch.merge(reducerSketch);
+                }
+            }
+        }
+        FileSystem mergedFs = merged.getFileSystem(conf);
+        try (FSDataOutputStream out = mergedFs.create(merged, true)) {
+            sketch.write(out);
+        }
+    }
+
+    /**
+     * Reads the merged sketch shipped through the distributed cache.
+     *
+     * @param conf the configuration of the job.
+     * @return the feature hashing of the job.
+     */
+    static FeatureHashing readFromCache(Configuration conf) throws IOException {
+        CountMinSketch sketch = new CountMinSketch();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(CACHE_FILE_NAME))) {
+            sketch.readFields(in);
+        }
+        return new FeatureHashing(conf, sketch);
+    }
+}
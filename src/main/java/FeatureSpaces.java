@@ -0,0 +1,100 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The feature spaces of the dependency paths, the two representations compared in the README:
+ * <ul>
+ * <li>pos - every node of a path is its POS tag (Method 1).</li>
+ * <li>words - the inner nodes of a path are their stemmed word and their POS tag, and the two nouns of the pair their
+ * POS tag (Method 2). The words of the pair are left out, or no path would connect more than one pair.</li>
+ * </ul>
+ * Mapper1 can find the paths of both spaces in the same pass, sharing the scan, the parsing and the trees of the
+ * biarcs. The paths of the words space are tagged with WORDS_PATH_TAG, so they are separate keys of Step1 whose DPmin
+ * condition is checked apart from the paths of the pos space. Reducer1 strips the tag and writes every output of the
+ * words space under the "words/" directory of the output of Step1, with the same names as the outputs of the pos
+ * space. Step2 runs a job for each space, the words space reading and writing under "words/", and PostProcessor
+ * processes each space it is given.
+ */
+class FeatureSpaces {
+
+    /**
+     * Configuration key of the comma separated feature spaces of the paths found by Mapper1, "pos" and "words".
+     */
+    public static final String FEATURE_SPACES = "FEATURE_SPACES";
+    /**
+     * Configuration key of the feature space of a job of Step2.
+     */
+    public static final String FEATURE_SPACE = "FEATURE_SPACE";
+    public static final String POS = "pos";
+    public static final String WORDS = "words";
+    /**
+     * The first character of the paths of the words space in the keys of Step1, which is neither a POS tag nor part
+     * of one.
+     */
+    public static final char WORDS_PATH_TAG = '~';
+
+    /**
+     * @param conf the configuration of the job.
+     * @return the feature spaces of FEATURE_SPACES, the pos space first, or the pos space alone if it is not set.
+     */
+    static List<String> getSpaces(Configuration conf) {
+        List<String> names = Arrays.asList(conf.get(FEATURE_SPACES, POS).replace(" ", "").split(","));
+        List<String> spaces = new ArrayList<>();
+        for (String space : new String[]{POS, WORDS})
+            if (names.contains(space))
+                spaces.add(space);
+        for (String name : names)
+            if (!spaces.contains(name))
+                throw new IllegalArgumentException("Unknown feature space in " + FEATURE_SPACES + ": " + name);
+        return spaces;
+    }
+
+    /**
+     * @param space a feature space.
+     * @return the directory of the outputs of the space, relative to the output of a step: empty for the pos space.
+     */
+    static String getDirectory(String space) {
+        return WORDS.equals(space) ? WORDS + "/" : "";
+    }
+
+    /**
+     * @param output the output directory of a step.
+     * @param space  a feature space.
+     * @return the directory of the outputs of the space: the output directory itself for the pos space.
+     */
+    static Path getPath(Path output, String space) {
+        return WORDS.equals(space) ? new Path(output, WORDS) : output;
+    }
+
+    /**
+     * @param path the text of a path of Step1.
+     * @return true if the path is a path of the words space.
+     */
+    static boolean isWordsPath(CharSequence path) {
+        return path.length() > 0 && path.charAt(0) == WORDS_PATH_TAG;
+    }
+
+    /**
+     * @param path a path of Step1.
+     * @return true if the path is a path of the words space, which is never packed as its tag is not a POS tag.
+     */
+    static boolean isWordsPath(PathWritable path) {
+        return !path.isPacked() && path.getLength() > 0 && path.getBytes()[0] == WORDS_PATH_TAG;
+    }
+
+    /**
+     * Sets a path to a path of the words space without its tag. The path is packed if it can be, as the words space
+     * path of two adjacent nouns only has their POS tags.
+     *
+     * @param taggedPath the tagged path of the words space.
+     * @param path       the path to set.
+     */
+    static void untag(PathWritable taggedPath, PathWritable path) {
+        path.set(new String(taggedPath.getBytes(), 1, taggedPath.getLength() - 1, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,177 @@
+import org.apache.hadoop.io.Text;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Builds the features vector of a noun pair from the dependency paths of the pair, the paths being indexed by the
+ * feature dictionary or by feature hashing. A single instance is reused for every pair of a task: only the entries
+ * set by a pair are reset once its vector is formatted, so the vector is never filled or scanned as a whole.
+ * <p>
+ * The paths are looked up as PathWritables, so the paths of the pairs side output of Step1 are used in the form
+ * Mapper1 built them, and only the text records of the regular output of Step1 are parsed.
+ */
+class FeaturesVectorBuilder {
+
+    private final Map<PathWritable, Integer> featureIndexes;
+    private final FeatureHashing featureHashing;
+    private final boolean sparse;
+    private final long[] featuresVector;
+    private final boolean[] isSet;
+    private final int[] nonZeroIndexes;
+    private int numOfNonZero;
+    private final PathWritable textPath = new PathWritable();
+
+    /**
+     * @param featureIndexes the index of the feature of every path of the dictionary.
+     * @param sparse         true to format the vectors in the sparse ARFF syntax.
+     */
+    FeaturesVectorBuilder(Map<PathWritable, Integer> featureIndexes, boolean sparse) {
+        this(featureIndexes, null, featureIndexes.size(), sparse);
+    }
+
+    /**
+     * @param featureHashing the feature hashing of the paths.
+     * @param sparse         true to format the vectors in the sparse ARFF syntax.
+     */
+    FeaturesVectorBuilder(FeatureHashing featureHashing, boolean sparse) {
+        this(null, featureHashing, featureHashing.getNumFeatures(), sparse);
+    }
+
+    private FeaturesVectorBuilder(Map<PathWritable, Integer> featureIndexes, FeatureHashing featureHashing, int numOfFeatures, boolean sparse) {
+        this.featureIndexes = featureIndexes;
+        this.featureHashing = featureHashing;
+        this.sparse = sparse;
+        featuresVector = new long[numOfFeatures];
+        isSet = new boolean[numOfFeatures];
+        nonZeroIndexes = new int[numOfFeatures];
+    }
+
+    /**
+     * Adds the dependency paths of the pair to the vector, as read from the pairs side output of Step1.
+     *
+     * @param pathCounts the paths of the pair and their occurrences.
+     */
+    void add(PathCountsWritable pathCounts) {
+        for (int i = 0; i < pathCounts.size(); i++)
+            add(pathCounts.get(i).getPath(), pathCounts.get(i).getCount());
+    }
+
+    /**
+     * Adds the dependency paths of the pair to the vector, as read from the regular output of Step1.
+     *
+     * @param dependencyPathsAndOccurrences the paths of the pair in the format of Step1,
+     *                                      "DependencyPath#Number of occurrences@DependencyPath#Number of occurrences@..."
+     */
+    void add(Text dependencyPathsAndOccurrences) {
+        for (String part : dependencyPathsAndOccurrences.toString().split(Step1.Reducer1.DELIMITER_2)) {
+            String[] depPathAndOcc = part.split(Step1.Reducer1.DELIMITER_1);
+            textPath.set(depPathAndOcc[0]);
+            add(textPath, Long.parseLong(depPathAndOcc[1]));
+        }
+    }
+
+    /**
+     * Adds a dependency path of the pair to the vector. Paths that are not in the dictionary, or that do not meet the
+     * approximate DPmin condition of feature hashing, are ignored. Hashed paths sharing a feature add up.
+     *
+     * @param path        the path.
+     * @param occurrences the occurrences of the path with the pair.
+     */
+    private void add(PathWritable path, long occurrences) {
+        if (featureHashing != null) {
+            long pathHash = FeatureHashing.hash(path);
+            if (featureHashing.isKept(pathHash)) {
+                int index = featureHashing.index(pathHash);
+                set(index, featuresVector[index] + featureHashing.sign(pathHash) * occurrences);
+            }
+        } else {
+            Integer index = featureIndexes.get(path);
+            if (index != null)
+                set(index, occurrences);
+        }
+    }
+
+    private void set(int index, long value) {
+        if (!isSet[index]) {
+            isSet[index] = true;
+            nonZeroIndexes[numOfNonZero++] = index;
+        }
+        featuresVector[index] = value;
+    }
+
+    /**
+     * @return true if every entry of the vector of the pair is zero, none of its paths being a feature.
+     */
+    boolean isEmpty() {
+        for (int i = 0; i < numOfNonZero; i++) {
+            if (featuresVector[nonZeroIndexes[i]] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Resets the vector of the pair for the next pair, without formatting it.
+     */
+    void clear() {
+        for (int i = 0; i < numOfNonZero; i++) {
+            featuresVector[nonZeroIndexes[i]] = 0;
+            isSet[nonZeroIndexes[i]] = false;
+        }
+        numOfNonZero = 0;
+    }
+
+    /**
+     * Formats the vector of the pair and resets it for the next pair.
+     *
+     * @param label the label of the pair.
+     * @return the ARFF data line of the pair.
+     */
+    String build(boolean label) {
+        Arrays.sort(nonZeroIndexes, 0, numOfNonZero);
+        // Signed hashed features may have cancelled out, and are left out of the non-zero entries
+        int numOfSet = numOfNonZero;
+        numOfNonZero = 0;
+        for (int i = 0; i < numOfSet; i++) {
+            int index = nonZeroIndexes[i];
+            isSet[index] = false;
+            if (featuresVector[index] != 0)
+                nonZeroIndexes[numOfNonZero++] = index;
+        }
+        String line = format(featuresVector, nonZeroIndexes, numOfNonZero, sparse, label);
+        for (int i = 0; i < numOfNonZero; i++)
+            featuresVector[nonZeroIndexes[i]] = 0;
+        numOfNonZero = 0;
+        return line;
+    }
+
+    /**
+     * Formats a features vector and the label of its pair as an ARFF data line. The dense format lists every entry of
+     * the vector; the sparse format lists the index and value of the non-zero entries only, followed by the index and
+     * value of the label, in the {index value, ...} syntax of sparse ARFF files.
+     *
+     * @param featuresVector the features vector.
+     * @param nonZeroIndexes the indexes of the non-zero entries of the vector, sorted.
+     * @param numOfNonZero   the number of non-zero entries.
+     * @param sparse         true for the sparse format.
+     * @param label          the label of the pair.
+     * @return the data line.
+     */
+    static String format(long[] featuresVector, int[] nonZeroIndexes, int numOfNonZero, boolean sparse, boolean label) {
+        StringBuilder sb = new StringBuilder();
+        if (sparse) {
+            sb.append("{");
+            for (int i = 0; i < numOfNonZero; i++) {
+                sb.append(nonZeroIndexes[i]).append(" ").append(featuresVector[nonZeroIndexes[i]]).append(",");
+            }
+            sb.append(featuresVector.length).append(" ").append(label).append("}");
+        } else {
+            for (long entry : featuresVector) {
+                sb.append(entry).append(",");
+            }
+            sb.append(label);
+        }
+        return sb.toString();
+    }
+}
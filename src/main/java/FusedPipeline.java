@@ -0,0 +1,48 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+
+/**
+ * Runs Step1 and Step2 one after the other from a single driver, as a single step of the job flow. The output of Step1
+ * is kept on the HDFS of the cluster instead of S3: Step2 reads it from there, and it is deleted once Step2 completed.
+ * Only the output of Step2 (and the number of features) is written to S3.
+ * <p>
+ * The two jobs cannot be chained into one: the feature dictionary of Step2 holds the paths that met the DPmin condition
+ * in every reducer of Step1, so it can only be built once Step1 completed.
+ */
+public class FusedPipeline {
+
+    /**
+     * Configuration key of the directory the output of Step1 is kept in.
+     */
+    public static final String FUSED_INTERMEDIATE_DIR = "FUSED_INTERMEDIATE_DIR";
+    public static final String DEFAULT_FUSED_INTERMEDIATE_DIR = "hdfs:///hypernym-detection/output1";
+
+    /**
+     * Main method of the fused pipeline.
+     *
+     * @param args unused.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        Pipeline.setSharedDefaults(conf);
+        Step1.setDefaults(conf);
+        Step2.setDefaults(conf);
+        conf.set(FUSED_INTERMEDIATE_DIR, DEFAULT_FUSED_INTERMEDIATE_DIR);
+
+        Path intermediate = new Path(conf.get(FUSED_INTERMEDIATE_DIR, DEFAULT_FUSED_INTERMEDIATE_DIR));
+        FileSystem fs = intermediate.getFileSystem(conf);
+        fs.delete(intermediate, true);
+
+        Job step1 = Step1.createJob(conf, new Path("s3://bucket1638974297772/input/"), intermediate);
+        if (!step1.waitForCompletion(true))
+            System.exit(1);
+        SkewMitigation.mergePartials(step1);
+
+        boolean completed = Step2.runJobs(conf, intermediate, new Path("s3://bucket1638974297772/output2"));
+        fs.delete(intermediate, true);
+        System.exit(completed ? 0 : 1);
+    }
+}
@@ -0,0 +1,147 @@
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch of the number of distinct keys added to it, with 2^p registers of a byte. The relative standard
+ * error of the estimate is about 1.04 / sqrt(2^p). Sketches of the same precision are merged by keeping the largest of
+ * every register.
+ * <p>
+ * Most sketches of the pipeline only count a few keys, so a sketch is serialized sparsely, as the index deltas and the
+ * values of its non-zero registers, whenever that is smaller than all the registers.
+ */
+class HyperLogLog implements Writable {
+
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 16;
+
+    private int precision;
+    private byte[] registers;
+
+    HyperLogLog() {
+        registers = new byte[0];
+    }
+
+    HyperLogLog(int precision) {
+        reset(precision);
+    }
+
+    /**
+     * @param relativeError the relative standard error wanted for the estimates.
+     * @return the smallest precision with that error, between 4 and 16.
+     */
+    static int precisionFor(double relativeError) {
+        int precision = (int) Math.ceil(Math.log(Math.pow(1.04 / relativeError, 2)) / Math.log(2));
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    /**
+     * Empties the sketch, with a new precision.
+     */
+    void reset(int precision) {
+        this.precision = precision;
+        if (registers == null || registers.length != 1 << precision)
+            registers = new byte[1 << precision];
+        else
+            Arrays.fill(registers, (byte) 0);
+    }
+
+    int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Adds a key to the sketch.
+     *
+     * @param hash a 64 bit hash of the key.
+     */
+    void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The rank is the position of the first 1 bit in the remaining bits, 64 - p + 1 if they are all 0
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        if (rank > registers[index])
+            registers[index] = (byte) rank;
+    }
+
+    /**
+     * Sets this sketch to a copy of another sketch.
+     */
+    void set(HyperLogLog other) {
+        reset(other.precision);
+        System.arraycopy(other.registers, 0, registers, 0, registers.length);
+    }
+
+    /**
+     * Merges another sketch of the same precision into this sketch.
+     */
+    void merge(HyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("Cannot merge a sketch of precision " + other.precision + " into a sketch of precision " + precision);
+        for (int i = 0; i < registers.length; i++)
+            if (other.registers[i] > registers[i])
+                registers[i] = other.registers[i];
+    }
+
+    /**
+     * @return the estimated number of distinct keys added to the sketch.
+     */
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0)
+                zeros++;
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // Linear counting is more accurate for small cardinalities
+        if (estimate <= 2.5 * m && zeros > 0)
+            estimate = m * Math.log((double) m / zeros);
+        return Math.round(estimate);
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, precision);
+        int nonZero = 0;
+        for (byte register : registers)
+            if (register != 0)
+                nonZero++;
+        // A sparse register takes a delta of at most 3 bytes and a value byte
+        if (nonZero * 3 < registers.length) {
+            WritableUtils.writeVInt(out, nonZero << 1 | 1);
+            int last = 0;
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] != 0) {
+                    WritableUtils.writeVInt(out, i - last);
+                    out.writeByte(registers[i]);
+                    last = i;
+                }
+            }
+        } else {
+            WritableUtils.writeVInt(out, 0);
+            out.write(registers);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        reset(WritableUtils.readVInt(in));
+        int header = WritableUtils.readVInt(in);
+        if ((header & 1) != 0) {
+            int index = 0;
+            for (int i = header >>> 1; i > 0; i--) {
+                index += WritableUtils.readVInt(in);
+                registers[index] = in.readByte();
+            }
+        } else {
+            in.readFully(registers);
+        }
+    }
+}
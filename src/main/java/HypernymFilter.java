@@ -0,0 +1,145 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Bloom filter of the stemmed noun pairs of the hypernym list, used by Mapper1 to skip the pair records of the noun
+ * pairs Reducer2 would discard anyway. The filter is built once by the driver of Step1, written next to the input of
+ * the job and shipped to the mappers through the distributed cache. When the rare pairs are pruned, Reducer1 reads it
+ * as well, to keep the pairs of the list.
+ * <p>
+ * A Bloom filter has no false negatives: every labeled pair is kept, and only a fraction (the false positive rate)
+ * of the other pairs are kept with them.
+ */
+class HypernymFilter {
+
+    /**
+     * Counters reporting how many pair records the filter dropped.
+     */
+    enum HypernymFilterCounter {
+        HYPERNYM_FILTER_KEPT_PAIRS,
+        HYPERNYM_FILTER_DROPPED_PAIRS
+    }
+
+    /**
+     * Configuration key of the hypernym filter switch of Mapper1.
+     */
+    public static final String HYPERNYM_FILTER = "HYPERNYM_FILTER";
+    /**
+     * Configuration key of the false positive rate the filter is sized for.
+     */
+    public static final String HYPERNYM_FILTER_FP_RATE = "HYPERNYM_FILTER_FP_RATE";
+    public static final double DEFAULT_HYPERNYM_FILTER_FP_RATE = 0.01;
+    /**
+     * The name of the filter in the working directory of the tasks.
+     */
+    public static final String CACHE_FILE_NAME = "hypernym.bloom";
+
+    private final BloomFilter filter;
+    private final Key key;
+    private byte[][] keyBuffers;
+
+    private long kept;
+    private long dropped;
+
+    HypernymFilter(BloomFilter filter) {
+        this.filter = filter;
+        key = new Key();
+        keyBuffers = new byte[64][];
+    }
+
+    /**
+     * Reads the filter shipped through the distributed cache.
+     *
+     * @return the filter.
+     */
+    static HypernymFilter readFromCache() throws IOException {
+        BloomFilter filter = new BloomFilter();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(CACHE_FILE_NAME))) {
+            filter.readFields(in);
+        }
+        return new HypernymFilter(filter);
+    }
+
+    /**
+     * Builds the filter of a hypernym list, sized for the number of pairs in the list and the false positive rate.
+     *
+     * @param hypernyms a reader of lines in the format "word1 word2 True/False".
+     * @param stemCache the cache to stem the words with, the same way Reducer2 stems them.
+     * @param fpRate    the false positive rate of the filter.
+     * @return the filter.
+     */
+    static BloomFilter build(BufferedReader hypernyms, StemCache stemCache, double fpRate) throws IOException {
+        List<String> pairs = new ArrayList<>();
+        String line;
+        while ((line = hypernyms.readLine()) != null) {
+            String[] pieces = line.split("\\s");
+            pairs.add(stemCache.stem(pieces[0]) + NounPairWritable.DELIMITER + stemCache.stem(pieces[1]));
+        }
+        int n = Math.max(pairs.size(), 1);
+        // The optimal number of bits and of hash functions of a Bloom filter of n keys
+        int vectorSize = (int) Math.ceil(-n * Math.log(fpRate) / (Math.log(2) * Math.log(2)));
+        int nbHash = Math.max(1, (int) Math.round((double) vectorSize / n * Math.log(2)));
+        BloomFilter filter = new BloomFilter(vectorSize, nbHash, Hash.MURMUR_HASH);
+        for (String pair : pairs)
+            filter.add(new Key(pair.getBytes(StandardCharsets.UTF_8)));
+        return filter;
+    }
+
+    /**
+     * Writes a filter to a file, from which it is added to the distributed cache.
+     */
+    static void write(BloomFilter filter, Path path, Configuration conf) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        try (FSDataOutputStream out = fs.create(path, true)) {
+            filter.write(out);
+        }
+    }
+
+    /**
+     * Tests a noun pair against the filter, counting the result.
+     *
+     * @param nounPair the noun pair.
+     * @return false if the pair is certainly not in the hypernym list.
+     */
+    boolean mightContain(NounPairWritable nounPair) {
+        int length = nounPair.getLength();
+        // Key hashes its whole array, so a buffer of the exact length is kept for every length met
+        if (length >= keyBuffers.length) {
+            byte[][] newBuffers = new byte[length + 1][];
+            System.arraycopy(keyBuffers, 0, newBuffers, 0, keyBuffers.length);
+            keyBuffers = newBuffers;
+        }
+        byte[] buffer = keyBuffers[length];
+        if (buffer == null)
+            buffer = keyBuffers[length] = new byte[length];
+        System.arraycopy(nounPair.getBytes(), 0, buffer, 0, length);
+        key.set(buffer, 1.0);
+        boolean contains = filter.membershipTest(key);
+        if (contains)
+            kept++;
+        else
+            dropped++;
+        return contains;
+    }
+
+    long getKept() {
+        return kept;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+}
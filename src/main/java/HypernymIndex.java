@@ -0,0 +1,153 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BinaryComparable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact index of the labeled noun pairs of the hypernym list, used by Reducer2 to find the label of a pair. The
+ * index is built once by the driver of Step2 from the stemmed pairs of the list, written next to the input of the job
+ * and shipped to the reducers through the distributed cache, where it is memory mapped instead of being read into a
+ * map.
+ * <p>
+ * Every pair is kept as a 64 bit fingerprint of the UTF-8 bytes of "stem1$stem2", and the index is the sorted array
+ * of the fingerprints followed by a bitset of the labels, in the order of the fingerprints:
+ * <pre>
+ * int count | long fingerprint[count] | long labels[(count + 63) / 64]
+ * </pre>
+ * A pair is found by a binary search of its fingerprint, computed from the bytes of the key of the reducer. Two pairs
+ * sharing a fingerprint are possible but very unlikely with a few hundred thousand pairs.
+ */
+class HypernymIndex {
+
+    /**
+     * Configuration key of the hypernym index switch of Reducer2.
+     */
+    public static final String HYPERNYM_INDEX = "HYPERNYM_INDEX";
+    /**
+     * The name of the index in the working directory of the tasks.
+     */
+    public static final String CACHE_FILE_NAME = "hypernym.index";
+
+    private static final int HEADER_SIZE = 4;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int labelsOffset;
+
+    HypernymIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        count = buffer.getInt(0);
+        labelsOffset = HEADER_SIZE + count * 8;
+    }
+
+    /**
+     * Memory maps the index shipped through the distributed cache.
+     *
+     * @return the index.
+     */
+    static HypernymIndex mapFromCache() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(CACHE_FILE_NAME), StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed
+            return new HypernymIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Builds the index of a hypernym list and writes it to a file, from which it is added to the distributed cache.
+     * When a pair is listed more than once, its last label is kept, as the map of Reducer2 did.
+     *
+     * @param hypernyms a reader of lines in the format "word1 word2 True/False".
+     * @param stemCache the cache to stem the words with, the same way Reducer2 stems them.
+     * @param path      the file the index is written to.
+     * @param conf      the configuration of the job.
+     * @return the number of pairs in the index.
+     */
+    static int build(BufferedReader hypernyms, StemCache stemCache, Path path, Configuration conf) throws IOException {
+        Map<Long, Boolean> labels = new HashMap<>();
+        String line;
+        while ((line = hypernyms.readLine()) != null) {
+            String[] pieces = line.split("\\s");
+            byte[] pair = (stemCache.stem(pieces[0]) + NounPairWritable.DELIMITER + stemCache.stem(pieces[1])).getBytes(StandardCharsets.UTF_8);
+            labels.put(fingerprint(pair, pair.length), pieces[2].equals("True"));
+        }
+
+        long[] fingerprints = new long[labels.size()];
+        int i = 0;
+        for (long fingerprint : labels.keySet())
+            fingerprints[i++] = fingerprint;
+        Arrays.sort(fingerprints);
+        long[] labelBits = new long[(fingerprints.length + 63) / 64];
+        for (i = 0; i < fingerprints.length; i++) {
+            if (labels.get(fingerprints[i]))
+                labelBits[i >>> 6] |= 1L << (i & 63);
+        }
+
+        FileSystem fs = path.getFileSystem(conf);
+        try (FSDataOutputStream out = fs.create(path, true)) {
+            out.writeInt(fingerprints.length);
+            for (long fingerprint : fingerprints)
+                out.writeLong(fingerprint);
+            for (long bits : labelBits)
+                out.writeLong(bits);
+        }
+        return fingerprints.length;
+    }
+
+    /**
+     * Finds the label of a noun pair.
+     *
+     * @param nounPair the noun pair, as a Text or a NounPairWritable of "stem1$stem2".
+     * @return the label of the pair, or null if the pair is not in the hypernym list.
+     */
+    Boolean getLabel(BinaryComparable nounPair) {
+        long fingerprint = fingerprint(nounPair.getBytes(), nounPair.getLength());
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midFingerprint = buffer.getLong(HEADER_SIZE + mid * 8);
+            if (midFingerprint < fingerprint) {
+                low = mid + 1;
+            } else if (midFingerprint > fingerprint) {
+                high = mid - 1;
+            } else {
+                long bits = buffer.getLong(labelsOffset + (mid >>> 6) * 8);
+                return (bits & (1L << (mid & 63))) != 0;
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * The 64 bit FNV-1a hash of a byte sequence, followed by the finalizer of MurmurHash3 to spread its bits.
+     */
+    static long fingerprint(byte[] bytes, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,175 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.Lz4Codec;
+import org.apache.hadoop.io.compress.SnappyCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The compression of the data handed from Step1 to Step2 through S3, and of the map outputs of both steps.
+ * <p>
+ * The outputs of Step1 are compressed with the codec named by INTERMEDIATE_CODEC, the sequence files of the split
+ * outputs in blocks of records. Step2 reads them natively: the sequence files record their codec, and the text files
+ * of the regular output are decompressed by TextInputFormat from their extension. The output of Step2 is read by
+ * PostProcessor and is left uncompressed.
+ */
+class IntermediateCompression {
+
+    /**
+     * Counters reporting the bytes of the records Reducer1 writes to the side outputs handed to Step2 and the bytes of
+     * the files holding them.
+     */
+    enum IntermediateCompressionCounter {
+        INTERMEDIATE_RAW_BYTES,
+        INTERMEDIATE_COMPRESSED_BYTES
+    }
+
+    /**
+     * Configuration key of the codec of the intermediate data: "snappy", "lz4", "zstd", "deflate" (which needs no
+     * native library) or "none".
+     */
+    public static final String INTERMEDIATE_CODEC = "INTERMEDIATE_CODEC";
+    public static final String DEFAULT_INTERMEDIATE_CODEC = "snappy";
+
+    /**
+     * The codec of Zstandard, which only ships with Hadoop 2.9 and later, so it is loaded by name.
+     */
+    private static final String ZSTANDARD_CODEC = "org.apache.hadoop.io.compress.ZStandardCodec";
+
+    private final Set<String> namedOutputs;
+    private long rawBytes;
+
+    /**
+     * @param namedOutputs the named outputs whose records are counted. The files of the other side outputs, such as
+     *                     the sketches of feature hashing, are left out of both counters.
+     */
+    IntermediateCompression(String... namedOutputs) {
+        this.namedOutputs = new HashSet<>(Arrays.asList(namedOutputs));
+    }
+
+    /**
+     * @param conf the configuration of the job.
+     * @return the codec of the intermediate data, or null if it is not compressed.
+     */
+    static Class<? extends CompressionCodec> getCodecClass(Configuration conf) {
+        String codec = conf.get(INTERMEDIATE_CODEC, DEFAULT_INTERMEDIATE_CODEC);
+        switch (codec) {
+            case "none":
+                return null;
+            case "snappy":
+                return SnappyCodec.class;
+            case "lz4":
+                return Lz4Codec.class;
+            case "deflate":
+                return DefaultCodec.class;
+            case "zstd":
+                try {
+                    return conf.getClassByName(ZSTANDARD_CODEC).asSubclass(CompressionCodec.class);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalArgumentException("zstd needs Hadoop 2.9 or later: " + ZSTANDARD_CODEC + " was not found", e);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown " + INTERMEDIATE_CODEC + ": " + codec);
+        }
+    }
+
+    /**
+     * Compresses the map output of a job with the intermediate codec.
+     *
+     * @param job the job.
+     */
+    static void configureMapOutput(Job job) {
+        Class<? extends CompressionCodec> codec = getCodecClass(job.getConfiguration());
+        if (codec == null)
+            return;
+        job.getConfiguration().setBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, true);
+        job.getConfiguration().setClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC, codec, CompressionCodec.class);
+    }
+
+    /**
+     * Compresses the map output and the outputs of a job with the intermediate codec, the sequence files in blocks.
+     *
+     * @param job the job.
+     */
+    static void configureOutput(Job job) {
+        configureMapOutput(job);
+        Class<? extends CompressionCodec> codec = getCodecClass(job.getConfiguration());
+        if (codec == null)
+            return;
+        FileOutputFormat.setCompressOutput(job, true);
+        FileOutputFormat.setOutputCompressorClass(job, codec);
+        SequenceFileOutputFormat.setOutputCompressionType(job, SequenceFile.CompressionType.BLOCK);
+    }
+
+    /**
+     * Counts the serialized bytes of a record written to the partial side output of the task, before compression.
+     *
+     * @param key   the key of the record.
+     * @param value the value of the record.
+     */
+    void countRecord(Text key, Text value) {
+        rawBytes += WritableUtils.getVIntSize(key.getLength()) + key.getLength();
+        rawBytes += WritableUtils.getVIntSize(value.getLength()) + value.getLength();
+    }
+
+    /**
+     * Counts the serialized bytes of a path and its number of pairs written to the dictionary side output of the task.
+     *
+     * @param key   the key of the record.
+     * @param value the value of the record.
+     */
+    void countRecord(PathWritable key, LongWritable value) {
+        rawBytes += key.getSerializedLength() + Long.BYTES;
+    }
+
+    /**
+     * Counts the serialized bytes of a noun pair and its paths written to the pairs side output of the task.
+     *
+     * @param key   the key of the record.
+     * @param value the value of the record.
+     */
+    void countRecord(NounPairWritable key, PathCountsWritable value) {
+        rawBytes += key.getSerializedLength() + value.getSerializedLength();
+    }
+
+    /**
+     * Reports the counters of the task. The compressed bytes are the sizes of the files of the counted named outputs
+     * in the work output directory of the task and in its directories, such as the one of the words space, once its
+     * side outputs are closed. The regular output is still open when the task cleans up, and is empty with split
+     * outputs, so its part files are left out of both counters.
+     *
+     * @param context the context of the task, once its side outputs are closed.
+     */
+    void reportCounters(TaskInputOutputContext<?, ?, ?, ?> context) throws IOException, InterruptedException {
+        context.getCounter(IntermediateCompressionCounter.INTERMEDIATE_RAW_BYTES).increment(rawBytes);
+        Path workPath = FileOutputFormat.getWorkOutputPath(context);
+        FileSystem fs = workPath.getFileSystem(context.getConfiguration());
+        long compressedBytes = 0;
+        RemoteIterator<LocatedFileStatus> files = fs.listFiles(workPath, true);
+        while (files.hasNext()) {
+            LocatedFileStatus file = files.next();
+            // The files of a named output are named after it, as "dictionary-r-00000"
+            String name = file.getPath().getName();
+            if (name.indexOf('-') > 0 && namedOutputs.contains(name.substring(0, name.indexOf('-'))))
+                compressedBytes += file.getLen();
+        }
+        context.getCounter(IntermediateCompressionCounter.INTERMEDIATE_COMPRESSED_BYTES).increment(compressedBytes);
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Finds the shortest paths between all the pairs of nouns of a tree, as defined by Snow et al.: the path from the
+ * first noun goes up to the lowest common ancestor of both nouns and then down to the second noun. Every pair is
+ * passed twice, once in each direction, with the path reversed. Nouns that cannot be reached from the root are skipped.
+ * <p>
+ * A pair whose path has more than the maximal number of links is skipped, both of its paths counted as pruned. The
+ * path is given up as soon as the walks up from both nouns are longer than that, without reaching their ancestor.
+ */
+class LcaPathExtractor implements PathExtractor {
+
+    private final int maxLinks;
+    private int[] nouns = new int[16];
+    private int[] pathNodes = new int[16];
+    private int[] reversedPathNodes = new int[16];
+    private long prunedPaths;
+
+    /**
+     * @param maxLinks the maximal number of links of a path.
+     */
+    LcaPathExtractor(int maxLinks) {
+        this.maxLinks = maxLinks;
+    }
+
+    @Override
+    public void extract(DependencyTree tree, PathConsumer consumer) throws IOException, InterruptedException {
+        int numOfNouns = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            if (tree.isNoun(node) && tree.getDepth(node) >= 0) {
+                if (numOfNouns == nouns.length)
+                    nouns = Arrays.copyOf(nouns, numOfNouns * 2);
+                nouns[numOfNouns++] = node;
+            }
+        }
+        for (int i = 0; i < numOfNouns; i++) {
+            for (int j = i + 1; j < numOfNouns; j++) {
+                int length = buildPath(tree, nouns[i], nouns[j]);
+                if (length < 0) {
+                    prunedPaths += 2;
+                    continue;
+                }
+                consumer.accept(pathNodes, length);
+                for (int k = 0; k < length; k++)
+                    reversedPathNodes[k] = pathNodes[length - 1 - k];
+                consumer.accept(reversedPathNodes, length);
+            }
+        }
+    }
+
+    @Override
+    public long getPrunedPaths() {
+        return prunedPaths;
+    }
+
+    /**
+     * Builds the path between two nodes into pathNodes.
+     *
+     * @return the number of nodes in the path, or -1 if it has more than the maximal number of links.
+     */
+    private int buildPath(DependencyTree tree, int from, int to) {
+        int fromDepth = tree.getDepth(from);
+        int toDepth = tree.getDepth(to);
+        // The path has at least as many links as the difference of the depths
+        if (Math.abs(fromDepth - toDepth) > maxLinks)
+            return -1;
+        int maxLength = fromDepth + toDepth + 1;
+        if (maxLength > pathNodes.length) {
+            pathNodes = new int[Math.max(maxLength, pathNodes.length * 2)];
+            reversedPathNodes = new int[pathNodes.length];
+        }
+        // The way up from the first noun is written from the start of the buffer, the way up from the second noun
+        // from its end, until both meet at their lowest common ancestor
+        int up = 0;
+        int down = maxLength;
+        while (fromDepth > toDepth) {
+            pathNodes[up++] = from;
+            from = tree.getParent(from);
+            fromDepth--;
+        }
+        while (toDepth > fromDepth) {
+            pathNodes[--down] = to;
+            to = tree.getParent(to);
+            toDepth--;
+        }
+        while (from != to) {
+            // Both walks are one link further from the ancestor
+            if (up + maxLength - down + 2 > maxLinks)
+                return -1;
+            pathNodes[up++] = from;
+            pathNodes[--down] = to;
+            from = tree.getParent(from);
+            to = tree.getParent(to);
+        }
+        pathNodes[up++] = from;
+        System.arraycopy(pathNodes, down, pathNodes, up, maxLength - down);
+        return up + maxLength - down;
+    }
+}
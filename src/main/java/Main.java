@@ -20,6 +20,10 @@ public class Main {
 
 
     public static int numberOfInstances = 10;
+    /**
+     * Runs Step1 and Step2 as a single step with FusedPipeline, the output of Step1 being kept on HDFS.
+     */
+    public static boolean fusedPipeline = false;
 
     public static void main(String[]args){
         credentialsProvider = new ProfileCredentialsProvider();
@@ -62,6 +66,15 @@ public class Main {
                 .withName("Step2")
                 .withHadoopJarStep(step2)
                 .withActionOnFailure("TERMINATE_JOB_FLOW");
+		//fused step1 and step2
+        HadoopJarStepConfig fusedStep = new HadoopJarStepConfig()
+                .withJar("s3://bucket1638974297772/jars/step1/MapReduceProject.jar")
+                .withMainClass("FusedPipeline");
+
+        StepConfig fusedStepConfig = new StepConfig()
+                .withName("FusedPipeline")
+                .withHadoopJarStep(fusedStep)
+                .withActionOnFailure("TERMINATE_JOB_FLOW");
 
 
         //Job flow
@@ -80,12 +93,14 @@ public class Main {
                 .withName("Map reduce project")
                 .withInstances(instances)
 //                .withSteps(stepConfig1)
-
-                .withSteps(stepConfig1, stepConfig2)
                 .withLogUri("s3://bucket1638974297772/Logs/")
                 .withServiceRole("EMR_DefaultRole")
                 .withJobFlowRole("EMR_EC2_DefaultRole")
                 .withReleaseLabel("emr-5.11.0");
+        if (fusedPipeline)
+            runFlowRequest.withSteps(fusedStepConfig);
+        else
+            runFlowRequest.withSteps(stepConfig1, stepConfig2);
 
         RunJobFlowResult runJobFlowResult = emr.runJobFlow(runFlowRequest);
         String jobFlowId = runJobFlowResult.getJobFlowId();
@@ -0,0 +1,93 @@
+import org.apache.hadoop.io.Text;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of the work of Mapper1 on 1, 2, 4 and 8 threads, outside of Hadoop. Like the threads of a
+ * MultithreadedMapper, every thread has its own parser, tree, path extractor and stem cache over the stemmer of the
+ * thread, and takes the sentences from a shared input in chunks.
+ * Usage: MapperThreadsBenchmark [biarcs-file]. Without a file, random biarcs are generated.
+ */
+public class MapperThreadsBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int CHUNK = 1000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<Text> sentences = args.length > 0 ? PathExtractorBenchmark.readSentences(args[0]) : PathExtractorBenchmark.generateSentences(1000000);
+        System.out.println("Sentences: " + sentences.size() + ", processors: " + Runtime.getRuntime().availableProcessors());
+
+        long singleThreadNanos = 0;
+        for (int threads : THREADS) {
+            long best = Long.MAX_VALUE;
+            long paths = 0;
+            for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                long start = System.nanoTime();
+                paths = run(sentences, threads);
+                long elapsed = System.nanoTime() - start;
+                if (round >= WARMUP_ROUNDS)
+                    best = Math.min(best, elapsed);
+            }
+            if (threads == 1)
+                singleThreadNanos = best;
+            System.out.printf("%d threads %12.0f sentences/s, speedup %.2f, %d paths%n", threads,
+                    sentences.size() * 1e9 / best, (double) singleThreadNanos / best, paths);
+        }
+    }
+
+    /**
+     * Does the work Mapper1 does for every sentence, short of writing the output, on a number of threads.
+     *
+     * @return the number of paths found.
+     */
+    private static long run(List<Text> sentences, int threads) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong paths = new AtomicLong();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                BiarcParser parser = new BiarcParser();
+                PosCodebook codebook = new PosCodebook();
+                DependencyTree tree = new DependencyTree();
+                PathExtractor extractor = PathExtractor.forName("subtree");
+                StemCache stemCache = new StemCache(Stemmer.forCurrentThread(), StemCache.DEFAULT_STEM_CACHE_SIZE);
+                PathWritable path = new PathWritable();
+                NounPairWritable nounPair = new NounPairWritable();
+                StringBuilder firstBuilder = new StringBuilder();
+                StringBuilder secondBuilder = new StringBuilder();
+                long[] found = new long[1];
+                PathExtractor.PathConsumer consumer = (pathNodes, length) -> {
+                    tree.setDependencyPath(path, pathNodes, length);
+                    firstBuilder.setLength(0);
+                    tree.appendStemmedWord(pathNodes[0], stemCache, firstBuilder);
+                    secondBuilder.setLength(0);
+                    tree.appendStemmedWord(pathNodes[length - 1], stemCache, secondBuilder);
+                    nounPair.set(firstBuilder, secondBuilder);
+                    found[0]++;
+                };
+                try {
+                    int start;
+                    while ((start = next.getAndAdd(CHUNK)) < sentences.size()) {
+                        for (Text sentence : sentences.subList(start, Math.min(start + CHUNK, sentences.size()))) {
+                            if (!parser.parse(sentence))
+                                continue;
+                            tree.reset(parser, codebook);
+                            extractor.extract(tree, consumer);
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                paths.addAndGet(found[0]);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        return paths.get();
+    }
+}
@@ -0,0 +1,143 @@
+import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A pair of stemmed nouns, held as the bytes of N1$N2 and serialized like a Text: a vint length followed by the
+ * bytes. Pairs sort by their bytes, and the raw Comparator sorts them without deserializing.
+ */
+public class NounPairWritable extends BinaryComparable implements WritableComparable<BinaryComparable> {
+
+    public static final char DELIMITER = '$';
+
+    private byte[] bytes;
+    private int length;
+
+    public NounPairWritable() {
+        bytes = new byte[32];
+    }
+
+    public NounPairWritable(NounPairWritable other) {
+        bytes = Arrays.copyOf(other.bytes, other.length);
+        length = other.length;
+    }
+
+    /**
+     * Sets the pair to the characters of two sequences of ASCII letters, such as the stems built by Mapper1, without
+     * creating a String.
+     *
+     * @param first  the first noun.
+     * @param second the second noun.
+     */
+    public void set(CharSequence first, CharSequence second) {
+        int firstLength = first.length();
+        length = firstLength + 1 + second.length();
+        ensureCapacity(length);
+        for (int i = 0; i < firstLength; i++)
+            bytes[i] = (byte) first.charAt(i);
+        bytes[firstLength] = DELIMITER;
+        for (int i = firstLength + 1; i < length; i++)
+            bytes[i] = (byte) second.charAt(i - firstLength - 1);
+    }
+
+    /**
+     * Sets the pair to the text of a pair, N1$N2.
+     *
+     * @param nounPair the text of the pair.
+     */
+    public void set(String nounPair) {
+        int delimiter = nounPair.indexOf(DELIMITER);
+        set(nounPair.substring(0, delimiter), nounPair.substring(delimiter + 1));
+    }
+
+    public void set(NounPairWritable other) {
+        ensureCapacity(other.length);
+        System.arraycopy(other.bytes, 0, bytes, 0, other.length);
+        length = other.length;
+    }
+
+    /**
+     * Empties the pair. The empty pair sorts before every other pair.
+     */
+    public void clear() {
+        length = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes written by write().
+     */
+    public int getSerializedLength() {
+        return WritableUtils.getVIntSize(length) + length;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, length);
+        out.write(bytes, 0, length);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        readBytes(in, WritableUtils.readVInt(in));
+    }
+
+    /**
+     * Reads the bytes of a pair whose length was already read, for the Writables that embed a pair.
+     *
+     * @param in     the input to read from.
+     * @param length the number of bytes of the pair.
+     */
+    void readBytes(DataInput in, int length) throws IOException {
+        this.length = length;
+        ensureCapacity(length);
+        in.readFully(bytes, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The raw comparator of NounPairWritable.
+     */
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(NounPairWritable.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+            int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+            return compareBytes(b1, s1 + n1, l1 - n1, b2, s2 + n2, l2 - n2);
+        }
+    }
+
+    static {
+        WritableComparator.define(NounPairWritable.class, new Comparator());
+    }
+}
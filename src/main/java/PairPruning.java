@@ -0,0 +1,99 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * The pruning of the rare noun pairs, which are almost all noise but cost the shuffle and the work of Step2. It is done
+ * in two steps:
+ * <ul>
+ * <li>Reducer1 drops the paths of a noun pair in a feature space when the pair occurs fewer than MIN_PAIR_OCCURRENCES
+ * times in the space, or with fewer than MIN_PAIR_PATHS distinct paths.</li>
+ * <li>Step2 finds the pairs whose features vector is entirely zero once the paths are filtered by DPmin.</li>
+ * </ul>
+ * The pairs of the hypernym list are never pruned unless PRUNE_LABELED_PAIRS is set. Reducer1 tells them by the
+ * hypernym filter, which has no false negatives: the few other pairs it lets through are kept with them. Step2 only
+ * writes the pairs of the list, so its empty vectors are only counted, and dropped when PRUNE_LABELED_PAIRS is set.
+ * <p>
+ * The pairs salted by the skew mitigation have many records, and a reducer only sees a part of their paths, so they
+ * are never pruned.
+ */
+class PairPruning {
+
+    /**
+     * Counters reporting the volume of the pruned pairs.
+     */
+    enum PairPruningCounter {
+        PRUNED_PAIRS,
+        PRUNED_PAIR_PATHS,
+        PRUNED_PAIR_OCCURRENCES,
+        PRUNED_PAIR_BYTES,
+        LABELED_PAIRS_KEPT,
+        EMPTY_VECTOR_PAIRS,
+        PRUNED_EMPTY_VECTOR_PAIRS
+    }
+
+    /**
+     * Configuration key of the minimal number of occurrences of a noun pair in a feature space, the sum of the
+     * occurrences of its paths. 1 prunes no pair.
+     */
+    public static final String MIN_PAIR_OCCURRENCES = "MIN_PAIR_OCCURRENCES";
+    /**
+     * Configuration key of the minimal number of distinct paths of a noun pair in a feature space. 1 prunes no pair.
+     */
+    public static final String MIN_PAIR_PATHS = "MIN_PAIR_PATHS";
+    /**
+     * Configuration key of the switch pruning the pairs of the hypernym list as well, in both steps.
+     */
+    public static final String PRUNE_LABELED_PAIRS = "PRUNE_LABELED_PAIRS";
+
+    private final long minOccurrences;
+    private final int minPaths;
+    private final boolean pruneLabeledPairs;
+
+    /**
+     * @param conf the configuration of the job.
+     */
+    PairPruning(Configuration conf) {
+        minOccurrences = conf.getLong(MIN_PAIR_OCCURRENCES, 1);
+        minPaths = conf.getInt(MIN_PAIR_PATHS, 1);
+        pruneLabeledPairs = conf.getBoolean(PRUNE_LABELED_PAIRS, false);
+    }
+
+    /**
+     * @param conf the configuration of the job.
+     * @return true if Reducer1 prunes the rare pairs.
+     */
+    static boolean isEnabled(Configuration conf) {
+        return conf.getLong(MIN_PAIR_OCCURRENCES, 1) > 1 || conf.getInt(MIN_PAIR_PATHS, 1) > 1;
+    }
+
+    /**
+     * @param conf the configuration of the job.
+     * @return true if Reducer1 needs the hypernym filter to keep the pairs of the hypernym list.
+     */
+    static boolean needsHypernymFilter(Configuration conf) {
+        return isEnabled(conf) && !conf.getBoolean(PRUNE_LABELED_PAIRS, false);
+    }
+
+    /**
+     * @param occurrences the occurrences of a noun pair in a feature space.
+     * @param paths       the number of distinct paths of the pair in the space.
+     * @return true if the pair is too rare to be kept, whether it is labeled or not.
+     */
+    boolean isRare(long occurrences, int paths) {
+        return occurrences < minOccurrences || paths < minPaths;
+    }
+
+    /**
+     * Counts a labeled pair whose features vector is entirely zero.
+     *
+     * @param context the context of the task.
+     * @return true if the pair is dropped.
+     */
+    boolean dropEmptyVector(TaskInputOutputContext<?, ?, ?, ?> context) {
+        context.getCounter(PairPruningCounter.EMPTY_VECTOR_PAIRS).increment(1);
+        if (!pruneLabeledPairs)
+            return false;
+        context.getCounter(PairPruningCounter.PRUNED_EMPTY_VECTOR_PAIRS).increment(1);
+        return true;
+    }
+}
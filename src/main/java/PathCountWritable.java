@@ -0,0 +1,49 @@
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A dependency path with the number of times it was found between a noun pair, serialized as the path followed by
+ * the count as a vlong. As text, it is written path$count.
+ */
+public class PathCountWritable implements Writable {
+
+    private final PathWritable path;
+    private long count;
+
+    public PathCountWritable() {
+        path = new PathWritable();
+    }
+
+    public PathWritable getPath() {
+        return path;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        path.write(out);
+        WritableUtils.writeVLong(out, count);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        path.readFields(in);
+        count = WritableUtils.readVLong(in);
+    }
+
+    @Override
+    public String toString() {
+        return path.toString() + NounPairWritable.DELIMITER + count;
+    }
+}
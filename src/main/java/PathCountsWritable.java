@@ -0,0 +1,95 @@
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The dependency paths of a noun pair in a feature space, each with the number of times it was found between the
+ * pair: the value of the pairs side output of Step1. It is serialized as the number of paths as a vint followed by
+ * every PathCountWritable, so Step2 reads the paths in the form Mapper1 built them, packed or not. The entries are
+ * reused from one pair to the next. As text, it is written in the format of the regular output of Step1,
+ * path#count@path#count@...
+ */
+public class PathCountsWritable implements Writable {
+
+    private final List<PathCountWritable> pathCounts = new ArrayList<>();
+    private int size;
+
+    /**
+     * Empties the list, keeping its entries for the next paths.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds a path to the list.
+     *
+     * @return the path count of the new entry, to be set by the caller.
+     */
+    public PathCountWritable add() {
+        if (size == pathCounts.size())
+            pathCounts.add(new PathCountWritable());
+        return pathCounts.get(size++);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public PathCountWritable get(int index) {
+        return pathCounts.get(index);
+    }
+
+    /**
+     * Sets the list to the paths of a text in the format of the regular output of Step1, packing the paths that can
+     * be.
+     *
+     * @param text the paths and their counts, path#count@path#count@...
+     */
+    public void set(CharSequence text) {
+        clear();
+        for (String part : text.toString().split(Step1.Reducer1.DELIMITER_2)) {
+            int delimiter = part.lastIndexOf(Step1.Reducer1.DELIMITER_1);
+            PathCountWritable pathCount = add();
+            pathCount.getPath().set(part.substring(0, delimiter));
+            pathCount.setCount(Long.parseLong(part.substring(delimiter + 1)));
+        }
+    }
+
+    /**
+     * @return the number of bytes written by write().
+     */
+    public int getSerializedLength() {
+        int length = WritableUtils.getVIntSize(size);
+        for (int i = 0; i < size; i++)
+            length += pathCounts.get(i).getPath().getSerializedLength() + WritableUtils.getVIntSize(pathCounts.get(i).getCount());
+        return length;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, size);
+        for (int i = 0; i < size; i++)
+            pathCounts.get(i).write(out);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        clear();
+        for (int i = WritableUtils.readVInt(in); i > 0; i--)
+            add().readFields(in);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < size; i++)
+            builder.append(pathCounts.get(i).getPath()).append(Step1.Reducer1.DELIMITER_1).append(pathCounts.get(i).getCount()).append(Step1.Reducer1.DELIMITER_2);
+        return builder.toString();
+    }
+}
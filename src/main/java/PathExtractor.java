@@ -0,0 +1,73 @@
+import java.io.IOException;
+
+/**
+ * Extracts the dependency paths between pairs of nouns of a DependencyTree.
+ */
+interface PathExtractor {
+
+    /**
+     * Counters of the paths left out by the extractors.
+     */
+    enum PathExtractorCounter {
+        PATHS_PRUNED_BY_LENGTH
+    }
+
+    /**
+     * Receives the paths found by a PathExtractor.
+     */
+    interface PathConsumer {
+
+        /**
+         * Called once for every path found. The arrays passed are reused by the extractor, so they are only valid
+         * during the call.
+         *
+         * @param pathNodes the nodes of the path, from the first noun of the pair to the second one.
+         * @param length    the number of nodes in the path.
+         */
+        void accept(int[] pathNodes, int length) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Finds the dependency paths of a tree.
+     *
+     * @param tree     a tree built from a parsed biarc.
+     * @param consumer the consumer every path is passed to.
+     */
+    void extract(DependencyTree tree, PathConsumer consumer) throws IOException, InterruptedException;
+
+    /**
+     * @return the number of paths left out so far for being longer than the maximal path length.
+     */
+    long getPrunedPaths();
+
+    /**
+     * Creates the extractor selected by the PATH_EXTRACTOR configuration value.
+     *
+     * @param name "subtree" for the paths from a noun down to the nouns below it, "lca" for the paths between all the
+     *             pairs of nouns through their lowest common ancestor.
+     * @return a new extractor.
+     */
+    static PathExtractor forName(String name) {
+        return forName(name, 0);
+    }
+
+    /**
+     * Creates the extractor selected by the PATH_EXTRACTOR configuration value, finding paths of at most a number of
+     * dependency links. The extractor stops following a path as soon as it is longer than that.
+     *
+     * @param name          the name of the extractor, as for forName(String).
+     * @param maxPathLength the maximal number of links of a path, 0 for no limit.
+     * @return a new extractor.
+     */
+    static PathExtractor forName(String name, int maxPathLength) {
+        int maxLinks = maxPathLength > 0 ? maxPathLength : Integer.MAX_VALUE;
+        switch (name) {
+            case "subtree":
+                return new SubtreePathExtractor(maxLinks);
+            case "lca":
+                return new LcaPathExtractor(maxLinks);
+            default:
+                throw new IllegalArgumentException("Unknown path extractor: " + name);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import org.apache.hadoop.io.Text;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the cost per sentence of every PathExtractor on the same biarcs, outside of Hadoop.
+ * Usage: PathExtractorBenchmark [biarcs-file]. Without a file, random biarcs are generated.
+ */
+public class PathExtractorBenchmark {
+
+    private static final String[] EXTRACTORS = {"subtree", "lca"};
+    private static final String[] TAGS = {"NN", "NNS", "NNP", "IN", "DT", "JJ", "VB", "VBD", "RB", "CC"};
+    private static final int SYNTHETIC_SENTENCES = 200000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<Text> sentences = args.length > 0 ? readSentences(args[0]) : generateSentences(SYNTHETIC_SENTENCES);
+        System.out.println("Sentences: " + sentences.size());
+
+        long parseNanos = measure(sentences, null);
+        System.out.printf("%-10s %10.1f ns/sentence%n", "parse", (double) parseNanos / sentences.size());
+        for (String name : EXTRACTORS) {
+            long nanos = measure(sentences, name);
+            System.out.printf("%-10s %10.1f ns/sentence (%.1f ns after parsing), %.2f paths/sentence%n", name,
+                    (double) nanos / sentences.size(), (double) (nanos - parseNanos) / sentences.size(),
+                    (double) run(sentences, name) / sentences.size());
+        }
+    }
+
+    /**
+     * Runs the parser, and the extractor if one is given, over all the sentences.
+     *
+     * @return the best time of a round, in nanoseconds.
+     */
+    private static long measure(List<Text> sentences, String extractorName) throws IOException, InterruptedException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            run(sentences, extractorName);
+            long elapsed = System.nanoTime() - start;
+            if (round >= WARMUP_ROUNDS)
+                best = Math.min(best, elapsed);
+        }
+        return best;
+    }
+
+    /**
+     * Does the work Mapper1 does for every sentence, short of stemming and writing the output.
+     *
+     * @return the number of paths found.
+     */
+    private static long run(List<Text> sentences, String extractorName) throws IOException, InterruptedException {
+        BiarcParser parser = new BiarcParser();
+        PosCodebook codebook = new PosCodebook();
+        DependencyTree tree = new DependencyTree();
+        PathExtractor extractor = extractorName == null ? null : PathExtractor.forName(extractorName);
+        PathWritable path = new PathWritable();
+        long[] paths = new long[1];
+        PathExtractor.PathConsumer consumer = (pathNodes, length) -> {
+            tree.setDependencyPath(path, pathNodes, length);
+            paths[0]++;
+        };
+        for (Text sentence : sentences) {
+            if (!parser.parse(sentence) || extractor == null)
+                continue;
+            tree.reset(parser, codebook);
+            extractor.extract(tree, consumer);
+        }
+        return paths[0];
+    }
+
+    static List<Text> readSentences(String fileName) throws IOException {
+        List<Text> sentences = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = br.readLine()) != null)
+                sentences.add(new Text(line));
+        }
+        return sentences;
+    }
+
+    /**
+     * Generates random biarcs of 2 to 6 tokens, each one a tree with a single root.
+     */
+    static List<Text> generateSentences(int count) {
+        Random random = new Random(1);
+        List<Text> sentences = new ArrayList<>(count);
+        StringBuilder sb = new StringBuilder();
+        for (int s = 0; s < count; s++) {
+            int length = 2 + random.nextInt(5);
+            int root = random.nextInt(length);
+            sb.setLength(0);
+            sb.append("word\t");
+            for (int i = 0; i < length; i++) {
+                int head = i == root ? 0 : 1 + (i < root ? root : random.nextInt(i));
+                if (i > 0)
+                    sb.append(' ');
+                sb.append("word").append(i).append('/').append(TAGS[random.nextInt(TAGS.length)]).append("/dep/").append(head);
+            }
+            sb.append("\t10\t2000,10");
+            sentences.add(new Text(sb.toString()));
+        }
+        return sentences;
+    }
+}
@@ -0,0 +1,159 @@
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Aggregates the records of Mapper1 in memory before they are written (in-mapper combining): the number of times
+ * every dependency path was found between every noun pair, and the set of noun pairs every path connects. A noun
+ * pair and a path found again and again in the split of the mapper are then written once, instead of twice per
+ * occurrence as in Step1.Mapper1.accept().
+ * <p>
+ * The aggregated records are written by flush(), which is called from the cleanup of the mapper and whenever the
+ * estimated size of the aggregated records reaches the memory budget. The estimate counts the bytes of every path and
+ * pair kept plus a fixed overhead per object and map entry.
+ */
+class PathPairAggregator {
+
+    /**
+     * Counters reporting how much the aggregation collapsed the output of the mapper.
+     */
+    enum InMapperCombiningCounter {
+        IN_MAPPER_INPUT_RECORDS,
+        IN_MAPPER_OUTPUT_RECORDS,
+        IN_MAPPER_FLUSHES
+    }
+
+    /**
+     * Configuration key of the in-mapper combining switch of Mapper1.
+     */
+    public static final String IN_MAPPER_COMBINING = "IN_MAPPER_COMBINING";
+    /**
+     * Configuration key of the memory budget of the in-mapper combining, in megabytes.
+     */
+    public static final String IN_MAPPER_BUDGET_MB = "IN_MAPPER_BUDGET_MB";
+    public static final int DEFAULT_IN_MAPPER_BUDGET_MB = 64;
+
+    /**
+     * Rough size in bytes of an object header, an array and a hash map entry, used to estimate the size of an entry.
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long budget;
+    private final boolean withPathRecords;
+    private final Map<NounPairWritable, Map<PathWritable, long[]>> pairPaths;
+    private final Map<PathWritable, Set<NounPairWritable>> pathPairs;
+    private long estimatedSize;
+
+    private long inputRecords;
+    private long outputRecords;
+    private long flushes;
+
+    private final Step1Key pathKey;
+    private final Step1Key nounPairKey;
+    private final Step1Value emptyValue;
+    private final Step1Value pathCountValue;
+
+    /**
+     * @param budgetMb        the memory budget in megabytes, the aggregated records are flushed when they reach it.
+     * @param withPathRecords false to only aggregate the pair records, when the path records are not to be written.
+     */
+    PathPairAggregator(int budgetMb, boolean withPathRecords) {
+        budget = budgetMb * 1024L * 1024L;
+        this.withPathRecords = withPathRecords;
+        pairPaths = new HashMap<>();
+        pathPairs = new HashMap<>();
+        pathKey = new Step1Key();
+        nounPairKey = new Step1Key();
+        emptyValue = new Step1Value();
+        emptyValue.setEmpty();
+        pathCountValue = new Step1Value();
+    }
+
+    /**
+     * Adds a path found between a noun pair. The path and the pair are copied when they are first met, so the caller
+     * may reuse them.
+     *
+     * @param nounPair      the noun pair.
+     * @param path          the dependency path between the nouns of the pair.
+     * @param withPathCount false to only add the pair to the pairs of the path, when the pair record of the pair is
+     *                      not to be written.
+     * @return true if the memory budget was reached and flush() should be called.
+     */
+    boolean add(NounPairWritable nounPair, PathWritable path, boolean withPathCount) {
+        if (withPathRecords) {
+            inputRecords++;
+            Set<NounPairWritable> pairs = pathPairs.get(path);
+            if (pairs == null) {
+                pairs = new HashSet<>();
+                pathPairs.put(new PathWritable(path), pairs);
+                estimatedSize += ENTRY_OVERHEAD + path.getLength();
+            }
+            if (!pairs.contains(nounPair)) {
+                pairs.add(new NounPairWritable(nounPair));
+                estimatedSize += ENTRY_OVERHEAD + nounPair.getLength();
+            }
+        }
+        if (withPathCount) {
+            inputRecords++;
+            Map<PathWritable, long[]> paths = pairPaths.get(nounPair);
+            if (paths == null) {
+                paths = new HashMap<>();
+                pairPaths.put(new NounPairWritable(nounPair), paths);
+                estimatedSize += ENTRY_OVERHEAD + nounPair.getLength();
+            }
+            long[] count = paths.get(path);
+            if (count != null) {
+                count[0]++;
+            } else {
+                paths.put(new PathWritable(path), new long[]{1});
+                estimatedSize += ENTRY_OVERHEAD + path.getLength();
+            }
+        }
+        return estimatedSize >= budget;
+    }
+
+    /**
+     * Writes the aggregated records in the format of Step1.Mapper1 and clears them.
+     *
+     * @param context the context of the mapper.
+     */
+    void flush(TaskInputOutputContext<?, ?, Step1Key, Step1Value> context) throws IOException, InterruptedException {
+        for (Map.Entry<NounPairWritable, Map<PathWritable, long[]>> pair : pairPaths.entrySet()) {
+            nounPairKey.setNounPair().set(pair.getKey());
+            for (Map.Entry<PathWritable, long[]> path : pair.getValue().entrySet()) {
+                PathCountWritable pathCount = pathCountValue.setPathCount();
+                pathCount.getPath().set(path.getKey());
+                pathCount.setCount(path.getValue()[0]);
+                context.write(nounPairKey, pathCountValue);
+                outputRecords++;
+            }
+        }
+        for (Map.Entry<PathWritable, Set<NounPairWritable>> path : pathPairs.entrySet()) {
+            pathKey.setPath().set(path.getKey());
+            for (NounPairWritable nounPair : path.getValue()) {
+                pathKey.getNounPair().set(nounPair);
+                context.write(pathKey, emptyValue);
+                outputRecords++;
+            }
+        }
+        pairPaths.clear();
+        pathPairs.clear();
+        estimatedSize = 0;
+        flushes++;
+    }
+
+    /**
+     * Reports the counters of the aggregation, once all the records were flushed.
+     *
+     * @param context the context of the mapper.
+     */
+    void reportCounters(TaskInputOutputContext<?, ?, ?, ?> context) {
+        context.getCounter(InMapperCombiningCounter.IN_MAPPER_INPUT_RECORDS).increment(inputRecords);
+        context.getCounter(InMapperCombiningCounter.IN_MAPPER_OUTPUT_RECORDS).increment(outputRecords);
+        context.getCounter(InMapperCombiningCounter.IN_MAPPER_FLUSHES).increment(flushes);
+    }
+}
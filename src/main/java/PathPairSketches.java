@@ -0,0 +1,154 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The HyperLogLog mode of the DPmin condition: instead of a record for every distinct noun pair of every path, Mapper1
+ * keeps a HyperLogLog sketch of the noun pairs of every path, and only writes the sketches, as the value of a path key
+ * with an empty noun pair. The combiner merges the sketches of a path into one, and Reducer1 applies DPmin to the
+ * estimate of the merged sketch. The size of a sketch follows from the relative error wanted, 1.04 / sqrt(2^p) for a
+ * sketch of 2^p registers.
+ * <p>
+ * The exact pair records are still written for a sample of the paths, picked by a hash of the path so that every mapper
+ * samples the same paths, and Reducer1 reports their estimate against their exact number of pairs to the "validation"
+ * side output and to the counters.
+ * <p>
+ * Like PathPairAggregator, the sketches are written by flush(), from the cleanup of the mapper and whenever the
+ * estimated size of the sketches reaches the memory budget of the in-mapper combining.
+ */
+class PathPairSketches {
+
+    /**
+     * Counters comparing the estimates of the sampled paths with their exact number of noun pairs.
+     */
+    enum PathPairSketchCounter {
+        HLL_SKETCHES_WRITTEN,
+        HLL_VALIDATED_PATHS,
+        HLL_VALIDATION_EXACT_PAIRS,
+        HLL_VALIDATION_ABSOLUTE_ERROR,
+        HLL_VALIDATION_WRONG_DECISIONS
+    }
+
+    /**
+     * Configuration key of the HyperLogLog mode of the DPmin condition of Step1.
+     */
+    public static final String HLL_DPMIN = "HLL_DPMIN";
+    /**
+     * Configuration key of the relative standard error of the estimates, from which the size of the sketches follows.
+     */
+    public static final String HLL_RELATIVE_ERROR = "HLL_RELATIVE_ERROR";
+    public static final double DEFAULT_HLL_RELATIVE_ERROR = 0.05;
+    /**
+     * Configuration key of the fraction of the paths whose estimate is validated against their exact number of pairs.
+     */
+    public static final String HLL_VALIDATION_RATE = "HLL_VALIDATION_RATE";
+    public static final double DEFAULT_HLL_VALIDATION_RATE = 0.01;
+    /**
+     * The named output of Step1 the validation report is written to.
+     */
+    public static final String VALIDATION_OUTPUT = "validation";
+
+    /**
+     * Rough size in bytes of an object header and a hash map entry, used to estimate the size of an entry.
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final int precision;
+    private final long budget;
+    private final long validationThreshold;
+    private final Map<PathWritable, HyperLogLog> sketches;
+    private long estimatedSize;
+    private long sketchesWritten;
+
+    private final Step1Key pathKey;
+    private final Step1Value sketchValue;
+
+    /**
+     * @param conf     the configuration of the job.
+     * @param budgetMb the memory budget in megabytes, the sketches are flushed when they reach it.
+     */
+    PathPairSketches(Configuration conf, int budgetMb) {
+        precision = getPrecision(conf);
+        budget = budgetMb * 1024L * 1024L;
+        validationThreshold = getValidationThreshold(conf);
+        sketches = new HashMap<>();
+        pathKey = new Step1Key();
+        sketchValue = new Step1Value();
+    }
+
+    /**
+     * @param conf the configuration of the job.
+     * @return the precision of the sketches.
+     */
+    static int getPrecision(Configuration conf) {
+        return HyperLogLog.precisionFor(conf.getDouble(HLL_RELATIVE_ERROR, DEFAULT_HLL_RELATIVE_ERROR));
+    }
+
+    /**
+     * @param conf the configuration of the job.
+     * @return the threshold under which the top 53 bits of the hash of a sampled path fall.
+     */
+    static long getValidationThreshold(Configuration conf) {
+        return (long) (conf.getDouble(HLL_VALIDATION_RATE, DEFAULT_HLL_VALIDATION_RATE) * (1L << 53));
+    }
+
+    /**
+     * @param path                a dependency path.
+     * @param validationThreshold the threshold of getValidationThreshold().
+     * @return true if the exact pairs of the path are written for the validation of its estimate.
+     */
+    static boolean isSampled(PathWritable path, long validationThreshold) {
+        return HypernymIndex.fingerprint(path.getBytes(), path.getLength()) >>> 11 < validationThreshold;
+    }
+
+    boolean isSampled(PathWritable path) {
+        return isSampled(path, validationThreshold);
+    }
+
+    /**
+     * Adds a noun pair to the sketch of a path. The path is copied when it is first met, so the caller may reuse it.
+     *
+     * @param path     the dependency path.
+     * @param nounPair the noun pair the path was found between.
+     * @return true if the memory budget was reached and flush() should be called.
+     */
+    boolean add(PathWritable path, NounPairWritable nounPair) {
+        HyperLogLog sketch = sketches.get(path);
+        if (sketch == null) {
+            sketch = new HyperLogLog(precision);
+            sketches.put(new PathWritable(path), sketch);
+            estimatedSize += ENTRY_OVERHEAD + path.getLength() + (1 << precision);
+        }
+        sketch.add(HypernymIndex.fingerprint(nounPair.getBytes(), nounPair.getLength()));
+        return estimatedSize >= budget;
+    }
+
+    /**
+     * Writes the sketches as the values of their path keys with an empty noun pair, and clears them.
+     *
+     * @param context the context of the mapper.
+     */
+    void flush(TaskInputOutputContext<?, ?, Step1Key, Step1Value> context) throws IOException, InterruptedException {
+        for (Map.Entry<PathWritable, HyperLogLog> entry : sketches.entrySet()) {
+            pathKey.setPath().set(entry.getKey());
+            pathKey.getNounPair().clear();
+            sketchValue.setSketch().set(entry.getValue());
+            context.write(pathKey, sketchValue);
+        }
+        sketchesWritten += sketches.size();
+        sketches.clear();
+        estimatedSize = 0;
+    }
+
+    /**
+     * Reports the counters of the sketches, once they were all flushed.
+     *
+     * @param context the context of the mapper.
+     */
+    void reportCounters(TaskInputOutputContext<?, ?, ?, ?> context) {
+        context.getCounter(PathPairSketchCounter.HLL_SKETCHES_WRITTEN).increment(sketchesWritten);
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the paths found in biarcs of the same shape. The paths the extractor finds in a biarc only depend
+ * on the POS tags of its tokens and their head indexes, and many biarcs only differ in their words, so the paths of a
+ * biarc are kept under a signature of its tags and heads: the pair of noun tokens and the dependency path of every
+ * path. A biarc whose signature is in the cache needs neither its tree built nor walked, only the words of its pairs
+ * stemmed.
+ * <p>
+ * The templates are evicted in least recently used order when the cache is full. A lookup reuses the same signature
+ * buffer, so a hit does not allocate.
+ */
+class PathTemplateCache {
+
+    /**
+     * Counters reporting the efficiency of the cache.
+     */
+    enum PathTemplateCounter {
+        PATH_TEMPLATE_HITS,
+        PATH_TEMPLATE_MISSES
+    }
+
+    /**
+     * Configuration key of the number of templates kept by the cache of every task, 0 disables the cache.
+     */
+    public static final String PATH_TEMPLATE_CACHE_SIZE = "PATH_TEMPLATE_CACHE_SIZE";
+    public static final int DEFAULT_PATH_TEMPLATE_CACHE_SIZE = 10000;
+
+    /**
+     * The paths of the biarcs of a signature: the first and last noun token of every path, and the path, with the
+     * number of paths the extractor pruned by their length.
+     */
+    static class Template {
+        private final int[] nouns;
+        private final PathWritable[] paths;
+        private final long prunedPaths;
+
+        private Template(int[] nouns, PathWritable[] paths, long prunedPaths) {
+            this.nouns = nouns;
+            this.paths = paths;
+            this.prunedPaths = prunedPaths;
+        }
+
+        int size() {
+            return paths.length;
+        }
+
+        int getFirst(int i) {
+            return nouns[2 * i];
+        }
+
+        int getSecond(int i) {
+            return nouns[2 * i + 1];
+        }
+
+        PathWritable getPath(int i) {
+            return paths[i];
+        }
+
+        long getPrunedPaths() {
+            return prunedPaths;
+        }
+    }
+
+    /**
+     * The POS code and the head index of every token of a biarc.
+     */
+    private static class Signature {
+        private int[] values;
+        private int length;
+        private int hash;
+
+        Signature(int capacity) {
+            values = new int[capacity];
+        }
+
+        Signature(Signature other) {
+            values = Arrays.copyOf(other.values, other.length);
+            length = other.length;
+            hash = other.hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Signature))
+                return false;
+            Signature other = (Signature) o;
+            if (length != other.length || hash != other.hash)
+                return false;
+            for (int i = 0; i < length; i++)
+                if (values[i] != other.values[i])
+                    return false;
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Map<Signature, Template> templates;
+    private final Signature signature;
+    private int[] recordedNouns;
+    private PathWritable[] recordedPaths;
+    private int recorded;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity the maximal number of templates kept.
+     */
+    PathTemplateCache(int capacity) {
+        templates = new LinkedHashMap<Signature, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Signature, Template> eldest) {
+                return size() > capacity;
+            }
+        };
+        signature = new Signature(32);
+        recordedNouns = new int[16];
+        recordedPaths = new PathWritable[8];
+    }
+
+    /**
+     * Looks up the template of the biarc held by a parser. On a miss, the paths then passed to record() are kept as
+     * the template of the biarc by finishRecording().
+     *
+     * @param parser   a parser holding a successfully parsed biarc.
+     * @param codebook the codebook used to encode the POS tags.
+     * @return the template of the biarc, or null if it is not in the cache.
+     */
+    Template get(BiarcParser parser, PosCodebook codebook) {
+        int size = parser.size();
+        if (2 * size > signature.values.length)
+            signature.values = new int[Math.max(2 * size, 2 * signature.values.length)];
+        char[] letters = parser.getLetters();
+        int hash = size;
+        for (int i = 0; i < size; i++) {
+            int posCode = codebook.getCode(letters, parser.getTagStart(i), parser.getTagLength(i));
+            int head = parser.getHead(i);
+            signature.values[2 * i] = posCode;
+            signature.values[2 * i + 1] = head;
+            hash = (hash * 31 + posCode) * 31 + head;
+        }
+        signature.length = 2 * size;
+        signature.hash = hash;
+        Template template = templates.get(signature);
+        if (template != null) {
+            hits++;
+        } else {
+            misses++;
+            recorded = 0;
+        }
+        return template;
+    }
+
+    /**
+     * Records a path of the biarc missed by the last lookup.
+     *
+     * @param first  the first noun token of the path.
+     * @param second the last noun token of the path.
+     * @param path   the dependency path, copied.
+     */
+    void record(int first, int second, PathWritable path) {
+        if (2 * recorded + 2 > recordedNouns.length)
+            recordedNouns = Arrays.copyOf(recordedNouns, recordedNouns.length * 2);
+        if (recorded == recordedPaths.length)
+            recordedPaths = Arrays.copyOf(recordedPaths, recordedPaths.length * 2);
+        recordedNouns[2 * recorded] = first;
+        recordedNouns[2 * recorded + 1] = second;
+        recordedPaths[recorded] = new PathWritable(path);
+        recorded++;
+    }
+
+    /**
+     * Keeps the recorded paths as the template of the biarc missed by the last lookup.
+     *
+     * @param prunedPaths the number of paths of the biarc the extractor pruned by their length.
+     */
+    void finishRecording(long prunedPaths) {
+        templates.put(new Signature(signature), new Template(Arrays.copyOf(recordedNouns, 2 * recorded), Arrays.copyOf(recordedPaths, recorded), prunedPaths));
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,268 @@
+import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A dependency path, such as NN:IN:NN, in one of two forms:
+ * <ul>
+ * <li>packed - a path of at most MAX_PACKED_COMPONENTS Penn Treebank tags is a long holding the fixed PosCodebook
+ * code of each tag in PACKED_CODE_BITS bits, the first tag in the highest bits. Unused low bits are 0, and as no
+ * tag has code 0 the end of the path is where the codes stop. The bytes of the path are the big-endian bytes of the
+ * long without its trailing zero bytes, so comparing them compares the longs as unsigned numbers.</li>
+ * <li>text - any other path is held as the UTF-8 bytes of its text.</li>
+ * </ul>
+ * A path always takes the packed form when it can, so equal paths have equal bytes. It is serialized as a vint
+ * whose lowest bit tells whether the path is packed and whose other bits are the number of bytes, followed by the
+ * bytes. Paths sort by their form first and then by their bytes, and the raw Comparator sorts them without
+ * deserializing. The text of a packed path is only built by toString().
+ */
+public class PathWritable extends BinaryComparable implements WritableComparable<BinaryComparable> {
+
+    public static final char DELIMITER = ':';
+    static final int PACKED_CODE_BITS = 6;
+    static final int MAX_PACKED_COMPONENTS = Long.SIZE / PACKED_CODE_BITS;
+    private static final int CODE_MASK = (1 << PACKED_CODE_BITS) - 1;
+
+    private byte[] bytes;
+    private int length;
+    private boolean packed;
+    private long packedPath;
+
+    public PathWritable() {
+        bytes = new byte[16];
+    }
+
+    public PathWritable(PathWritable other) {
+        bytes = Arrays.copyOf(other.bytes, Math.max(other.length, Long.BYTES));
+        length = other.length;
+        packed = other.packed;
+        packedPath = other.packedPath;
+    }
+
+    /**
+     * Sets the path to the packed form of a sequence of POS codes.
+     *
+     * @param codes  the PosCodebook codes of the tags of the path.
+     * @param length the number of tags in the path.
+     * @return true if the path was set, false if the codes cannot be packed because there are too many of them or
+     * one of them is not the fixed code of a Penn Treebank tag. The path is left unchanged in that case.
+     */
+    public boolean setPacked(int[] codes, int length) {
+        if (length == 0 || length > MAX_PACKED_COMPONENTS)
+            return false;
+        long path = 0;
+        for (int i = 0; i < length; i++) {
+            if (!PosCodebook.isPennCode(codes[i]))
+                return false;
+            path |= (long) codes[i] << (Long.SIZE - PACKED_CODE_BITS * (i + 1));
+        }
+        setPacked(path);
+        return true;
+    }
+
+    private void setPacked(long path) {
+        packed = true;
+        packedPath = path;
+        ensureCapacity(Long.BYTES);
+        length = 0;
+        for (long rest = path; rest != 0; rest <<= Byte.SIZE)
+            bytes[length++] = (byte) (rest >>> (Long.SIZE - Byte.SIZE));
+    }
+
+    /**
+     * Sets the path to the components of a text path, packing it if it can be.
+     *
+     * @param path the path, its components separated by DELIMITER.
+     */
+    public void set(CharSequence path) {
+        if (!pack(path))
+            setText(path);
+    }
+
+    private boolean pack(CharSequence path) {
+        long packedPath = 0;
+        int start = 0;
+        for (int i = 0; i < MAX_PACKED_COMPONENTS; i++) {
+            int end = start;
+            while (end < path.length() && path.charAt(end) != DELIMITER)
+                end++;
+            int code = PosCodebook.getPennCode(path, start, end);
+            if (code == 0)
+                return false;
+            packedPath |= (long) code << (Long.SIZE - PACKED_CODE_BITS * (i + 1));
+            if (end == path.length()) {
+                setPacked(packedPath);
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private void setText(CharSequence path) {
+        packed = false;
+        length = path.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+            if (c >= 0x80) {
+                // Paths built by Mapper1 are ASCII only, anything else takes the slow way
+                byte[] encoded = path.toString().getBytes(StandardCharsets.UTF_8);
+                length = encoded.length;
+                ensureCapacity(length);
+                System.arraycopy(encoded, 0, bytes, 0, length);
+                return;
+            }
+            bytes[i] = (byte) c;
+        }
+    }
+
+    public void set(PathWritable other) {
+        ensureCapacity(other.length);
+        System.arraycopy(other.bytes, 0, bytes, 0, other.length);
+        length = other.length;
+        packed = other.packed;
+        packedPath = other.packedPath;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+    }
+
+    public boolean isPacked() {
+        return packed;
+    }
+
+    /**
+     * @return the packed path, meaningful only if the path is packed.
+     */
+    public long getPackedPath() {
+        return packedPath;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes written by write().
+     */
+    public int getSerializedLength() {
+        return WritableUtils.getVIntSize(length << 1 | (packed ? 1 : 0)) + length;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, length << 1 | (packed ? 1 : 0));
+        out.write(bytes, 0, length);
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int header = WritableUtils.readVInt(in);
+        readBytes(in, header >>> 1, (header & 1) != 0);
+    }
+
+    /**
+     * Reads the bytes of a path whose length and form were already read, for the Writables that embed a path.
+     *
+     * @param in     the input to read from.
+     * @param length the number of bytes of the path.
+     * @param packed true if the path is packed.
+     */
+    void readBytes(DataInput in, int length, boolean packed) throws IOException {
+        this.length = length;
+        this.packed = packed;
+        ensureCapacity(length);
+        in.readFully(bytes, 0, length);
+        if (packed) {
+            packedPath = 0;
+            for (int i = 0; i < length; i++)
+                packedPath |= (bytes[i] & 0xFFL) << (Long.SIZE - Byte.SIZE * (i + 1));
+        }
+    }
+
+    @Override
+    public int compareTo(BinaryComparable other) {
+        if (other instanceof PathWritable) {
+            PathWritable path = (PathWritable) other;
+            if (packed != path.packed)
+                return packed ? -1 : 1;
+            if (packed)
+                return Long.compareUnsigned(packedPath, path.packedPath);
+        }
+        return super.compareTo(other);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PathWritable && compareTo((PathWritable) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return packed ? Long.hashCode(packedPath) : super.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        if (!packed)
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < MAX_PACKED_COMPONENTS; i++) {
+            int code = (int) (packedPath >>> (Long.SIZE - PACKED_CODE_BITS * (i + 1))) & CODE_MASK;
+            if (code == 0)
+                break;
+            if (i > 0)
+                builder.append(DELIMITER);
+            builder.append(PosCodebook.getPennTag(code));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The raw comparator of PathWritable.
+     */
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(PathWritable.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int packed1;
+            int packed2;
+            try {
+                packed1 = readVInt(b1, s1) & 1;
+                packed2 = readVInt(b2, s2) & 1;
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+            // Packed paths first, as in compareTo()
+            if (packed1 != packed2)
+                return packed2 - packed1;
+            int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+            int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+            return compareBytes(b1, s1 + n1, l1 - n1, b2, s2 + n2, l2 - n2);
+        }
+    }
+
+    static {
+        WritableComparator.define(PathWritable.class, new Comparator());
+    }
+}
@@ -0,0 +1,25 @@
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * The configuration shared by Step1 and Step2. Step2 reads the output of Step1 according to some of the values of
+ * Step1, so these values are set once here, and every driver sets them before the defaults of its own steps. A value
+ * that only one step reads is set by the setDefaults() of that step.
+ */
+class Pipeline {
+
+    /**
+     * Sets the default configuration shared by both steps.
+     *
+     * @param conf the configuration of the jobs.
+     */
+    static void setSharedDefaults(Configuration conf) {
+        conf.setInt(Step1.DPMIN, Step1.DEFAULT_DPMIN);
+        conf.set(FeatureDictionary.DPMIN_LIST, "");
+        conf.setInt(StemCache.STEM_CACHE_SIZE, StemCache.DEFAULT_STEM_CACHE_SIZE);
+        conf.set(FeatureSpaces.FEATURE_SPACES, FeatureSpaces.POS);
+        conf.setBoolean(Step1.SPLIT_OUTPUTS, true);
+        conf.set(IntermediateCompression.INTERMEDIATE_CODEC, IntermediateCompression.DEFAULT_INTERMEDIATE_CODEC);
+        conf.setBoolean(FeatureHashing.FEATURE_HASHING, false);
+        conf.setBoolean(PairPruning.PRUNE_LABELED_PAIRS, false);
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * Maps POS tags to small integer codes, so that the tags of a biarc can be kept in an int array and compared as
+ * numbers. The Penn Treebank tags, spelled the way BiarcParser leaves them (letters only, so PRP$ becomes PRP and
+ * -LRB- becomes LRB), have fixed codes starting from 1. Any other tag met in the corpus is given the next free code.
+ * Code 0 is never given to a tag.
+ * <p>
+ * The fixed codes are the same in every codebook and all fit in PathWritable.PACKED_CODE_BITS bits, so paths made of
+ * Penn Treebank tags only can be packed into a long and decoded anywhere.
+ */
+class PosCodebook {
+
+    static final String[] PENN_TAGS = {
+            "CC", "CD", "DT", "EX", "FW", "IN", "JJ", "JJR", "JJS", "LS", "MD", "NN", "NNS", "NNP", "NNPS", "PDT",
+            "POS", "PRP", "RB", "RBR", "RBS", "RP", "SYM", "TO", "UH", "VB", "VBD", "VBG", "VBN", "VBP", "VBZ", "WDT",
+            "WP", "WRB", "LRB", "RRB", "ADD", "AFX", "GW", "HYPH", "NFP", "XX", "NONE"
+    };
+
+    private String[] tags;
+    private boolean[] nouns;
+    private int size;
+    private int[] table;
+
+    PosCodebook() {
+        tags = new String[PENN_TAGS.length + 1];
+        nouns = new boolean[tags.length];
+        size = 1;
+        table = new int[128];
+        for (String tag : PENN_TAGS)
+            getCode(tag.toCharArray(), 0, tag.length());
+    }
+
+    /**
+     * Returns the code of a tag, giving it a new code if it was never seen before.
+     *
+     * @param buffer a buffer holding the tag.
+     * @param start  the offset of the tag in the buffer.
+     * @param length the length of the tag.
+     * @return the code of the tag.
+     */
+    int getCode(char[] buffer, int start, int length) {
+        int slot = hash(buffer, start, length) & (table.length - 1);
+        while (table[slot] != 0) {
+            if (matches(tags[table[slot]], buffer, start, length))
+                return table[slot];
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return addTag(new String(buffer, start, length), slot);
+    }
+
+    /**
+     * @return the tag of a code.
+     */
+    String getTag(int code) {
+        return tags[code];
+    }
+
+    boolean isNoun(int code) {
+        return nouns[code];
+    }
+
+    /**
+     * @return true if the code is the fixed code of a Penn Treebank tag.
+     */
+    static boolean isPennCode(int code) {
+        return code > 0 && code <= PENN_TAGS.length;
+    }
+
+    /**
+     * @return the Penn Treebank tag of a fixed code.
+     */
+    static String getPennTag(int code) {
+        return PENN_TAGS[code - 1];
+    }
+
+    /**
+     * Returns the fixed code of a Penn Treebank tag held in a slice of a sequence.
+     *
+     * @param sequence a sequence holding the tag.
+     * @param start    the offset of the tag in the sequence.
+     * @param end      the offset after the tag.
+     * @return the code of the tag, or 0 if it is not a Penn Treebank tag.
+     */
+    static int getPennCode(CharSequence sequence, int start, int end) {
+        for (int i = 0; i < PENN_TAGS.length; i++) {
+            String tag = PENN_TAGS[i];
+            if (tag.length() != end - start)
+                continue;
+            int j = 0;
+            while (j < tag.length() && tag.charAt(j) == sequence.charAt(start + j))
+                j++;
+            if (j == tag.length())
+                return i + 1;
+        }
+        return 0;
+    }
+
+    private int addTag(String tag, int slot) {
+        if (size == tags.length) {
+            tags = Arrays.copyOf(tags, size * 2);
+            nouns = Arrays.copyOf(nouns, size * 2);
+        }
+        int code = size++;
+        tags[code] = tag;
+        nouns[code] = tag.equals("NN") || tag.equals("NNS") || tag.equals("NNP") || tag.equals("NNPS");
+        table[slot] = code;
+        if (size * 2 > table.length)
+            rehash();
+        return code;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        for (int code = 1; code < size; code++) {
+            String tag = tags[code];
+            int slot = tag.hashCode() & (table.length - 1);
+            while (table[slot] != 0)
+                slot = (slot + 1) & (table.length - 1);
+            table[slot] = code;
+        }
+    }
+
+    /**
+     * The same hash String.hashCode() computes, so that rehashing can use the stored tags.
+     */
+    private static int hash(char[] buffer, int start, int length) {
+        int h = 0;
+        for (int i = start; i < start + length; i++)
+            h = 31 * h + buffer[i];
+        return h;
+    }
+
+    private static boolean matches(String tag, char[] buffer, int start, int length) {
+        if (tag.length() != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (tag.charAt(i) != buffer[start + i])
+                return false;
+        return true;
+    }
+}
@@ -6,12 +6,17 @@ import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class PostProcessor {
 
@@ -20,17 +25,41 @@ public class PostProcessor {
     private static final String POSTFIX = "@ATTRIBUTE ans {true, false}\n\n@DATA\n";
     public static final String BUCKET_NAME = "bucket1638974297772";
 
+    /**
+     * Writes the output of Step2 to the ARFF files of the classifier. The lines of Step2 are either dense ("v,v,...,label")
+     * or sparse ("{i v,i v,...,n label}", as written when SPARSE_VECTORS is set). Both are valid ARFF data lines under
+     * the same header, so they are copied as they are to the file without the noun pairs. In the file with the noun
+     * pairs, the noun pair is attribute 0: a dense line follows it, and a sparse line gets it as its first entry, with
+     * the indexes of the features and of the label shifted by one.
+     * <p>
+     * When Step2 ran with a list of DPmin thresholds, the number of features is followed by a line of every threshold
+     * and its number of features, and the ARFF files of every threshold are written as well, with the vectors cut to
+     * the features of the threshold, and the noun pairs added to the cut vectors as above.
+     *
+     * @param args optional: the feature spaces to process, "pos" (default) and "words". The files of the words space
+     *             are read from and written to "words" directories.
+     */
     public static void main(String[] args) throws IOException {
+        for (String space : args.length > 0 ? args : new String[]{FeatureSpaces.POS})
+            process(FeatureSpaces.getDirectory(space));
+    }
+
+    /**
+     * Writes the output of Step2 for a feature space to the ARFF files of the classifier, as described in main().
+     *
+     * @param directory the directory of the feature space, empty for the pos space.
+     * @throws IOException if there is an error reading from S3 or writing the files
+     */
+    private static void process(String directory) throws IOException {
         // Read M-R output from S3 and NumOfFeatures from S3
-        BufferedReader brMROutput = getS3BufferedReader(BUCKET_NAME, "output2/part-r-00000");
-        BufferedReader brNumOfFeatures = getS3BufferedReader(BUCKET_NAME, "numOfFeatures.txt");
+        BufferedReader brNumOfFeatures = getS3BufferedReader(BUCKET_NAME, directory + "numOfFeatures.txt");
 //        BufferedReader brMROutput = new BufferedReader(new FileReader("output2/part-r-00000"));
 
         // Create local directories and file writers
-        createLocalDirectories();
-        BufferedWriter bwClassifierInput1 = new BufferedWriter(new FileWriter(new File("classifier_input/processed_single_corpus.arff")));
-        BufferedWriter bwClassifierInput2 = new BufferedWriter(new FileWriter(new File("classifier_input/processed_single_corpus_with_words.arff")));
-        BufferedWriter bwcopy = new BufferedWriter(new FileWriter("output/part-r-00000"));
+        createLocalDirectories(directory);
+        BufferedWriter bwClassifierInput1 = new BufferedWriter(new FileWriter(new File("classifier_input/" + directory + "processed_single_corpus.arff")));
+        BufferedWriter bwClassifierInput2 = new BufferedWriter(new FileWriter(new File("classifier_input/" + directory + "processed_single_corpus_with_words.arff")));
+        BufferedWriter bwcopy = new BufferedWriter(new FileWriter("output/" + directory + "part-r-00000"));
 
         // Get vector length from NumOfFeatures file
         int vectorLength = Integer.parseInt(brNumOfFeatures.readLine());
@@ -40,25 +69,105 @@ public class PostProcessor {
         writeARFFHeader(bwClassifierInput1, vectorLength, PREFIX1);
         writeARFFHeader(bwClassifierInput2, vectorLength, PREFIX2);
 
-        // Read and process each line of M-R output
-        String line;
-        while ((line = brMROutput.readLine()) != null) {
-            // Copy M-R output to local file
-            bwcopy.write(line + "\n");
+        // The files of every DPmin threshold, if there are any
+        List<Integer> thresholdLengths = new ArrayList<>();
+        List<BufferedWriter> bwThresholdInputs1 = new ArrayList<>();
+        List<BufferedWriter> bwThresholdInputs2 = new ArrayList<>();
+        String thresholdLine;
+        while ((thresholdLine = brNumOfFeatures.readLine()) != null && !thresholdLine.isEmpty()) {
+            String[] thresholdAndLength = thresholdLine.split("\t");
+            int thresholdLength = Integer.parseInt(thresholdAndLength[1]);
+            BufferedWriter bw1 = new BufferedWriter(new FileWriter(new File("classifier_input/" + directory + "processed_single_corpus_dpmin" + thresholdAndLength[0] + ".arff")));
+            BufferedWriter bw2 = new BufferedWriter(new FileWriter(new File("classifier_input/" + directory + "processed_single_corpus_with_words_dpmin" + thresholdAndLength[0] + ".arff")));
+            writeARFFHeader(bw1, thresholdLength, PREFIX1);
+            writeARFFHeader(bw2, thresholdLength, PREFIX2);
+            thresholdLengths.add(thresholdLength);
+            bwThresholdInputs1.add(bw1);
+            bwThresholdInputs2.add(bw2);
+        }
+
+        // Read and process each line of M-R output, from every reducer (or every mapper, with split outputs) of Step2
+        for (String key : listS3Keys(BUCKET_NAME, "output2/" + directory + "part-")) {
+            BufferedReader brMROutput = getS3BufferedReader(BUCKET_NAME, key);
+            String line;
+            while ((line = brMROutput.readLine()) != null) {
+                // Copy M-R output to local file
+                bwcopy.write(line + "\n");
+
+                // Write data to arff files
+                bwClassifierInput1.write(line.substring(line.indexOf("\t") + 1) + "\n");
+                bwClassifierInput2.write(withNounPair(line.substring(0, line.indexOf("\t")), line.substring(line.indexOf("\t") + 1)) + "\n");
 
-            // Write data to arff files
-            bwClassifierInput1.write(line.substring(line.indexOf("\t") + 1) + "\n");
-            bwClassifierInput2.write(line + "\n");
+                // Write the vector cut to the features of every threshold
+                for (int i = 0; i < thresholdLengths.size(); i++) {
+                    String vector = cutVector(line.substring(line.indexOf("\t") + 1), thresholdLengths.get(i));
+                    bwThresholdInputs1.get(i).write(vector + "\n");
+                    bwThresholdInputs2.get(i).write(withNounPair(line.substring(0, line.indexOf("\t")), vector) + "\n");
+                }
+            }
+            brMROutput.close();
         }
 
         // Close file readers and writers
-        brMROutput.close();
         //brNumOfFeatures.close();
         bwClassifierInput1.close();
         bwClassifierInput2.close();
+        for (int i = 0; i < thresholdLengths.size(); i++) {
+            bwThresholdInputs1.get(i).close();
+            bwThresholdInputs2.get(i).close();
+        }
         bwcopy.close();
     }
 
+    /**
+     * Cuts a features vector to its first features. The features of a DPmin threshold are the first ones of the
+     * dictionary, so this gives the vector of the pair for the threshold.
+     *
+     * @param vector        the ARFF data line of the vector, dense or sparse, with its label.
+     * @param numOfFeatures the number of features kept.
+     * @return the data line of the cut vector, with its label.
+     */
+    static String cutVector(String vector, int numOfFeatures) {
+        StringBuilder sb = new StringBuilder();
+        if (vector.startsWith("{")) {
+            String[] entries = vector.substring(1, vector.length() - 1).split(",");
+            sb.append("{");
+            for (int i = 0; i < entries.length - 1; i++) {
+                if (Integer.parseInt(entries[i].substring(0, entries[i].indexOf(' '))) < numOfFeatures)
+                    sb.append(entries[i]).append(",");
+            }
+            // The label is the attribute after the features
+            String label = entries[entries.length - 1];
+            sb.append(numOfFeatures).append(label.substring(label.indexOf(' '))).append("}");
+        } else {
+            String[] entries = vector.split(",");
+            for (int i = 0; i < numOfFeatures; i++) {
+                sb.append(entries[i]).append(",");
+            }
+            sb.append(entries[entries.length - 1]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the data line of a vector in the ARFF file with the noun pairs, whose first attribute is the noun pair.
+     *
+     * @param nounPair the noun pair of the vector.
+     * @param vector   the ARFF data line of the vector, dense or sparse, with its label.
+     * @return the dense line after the noun pair, or the sparse line with the noun pair as attribute 0 and the other
+     * indexes shifted by one.
+     */
+    static String withNounPair(String nounPair, String vector) {
+        if (!vector.startsWith("{"))
+            return nounPair + "\t" + vector;
+        StringBuilder sb = new StringBuilder("{0 '").append(nounPair.replace("\\", "\\\\").replace("'", "\\'")).append("'");
+        for (String entry : vector.substring(1, vector.length() - 1).split(",")) {
+            int space = entry.indexOf(' ');
+            sb.append(",").append(Integer.parseInt(entry.substring(0, space)) + 1).append(entry.substring(space));
+        }
+        return sb.append("}").toString();
+    }
+
     /**
      * Gets a BufferedReader for an object in S3.
      *
@@ -88,18 +197,20 @@ public class PostProcessor {
     }
 
     /**
-     * Creates the local directories "classifier_input" and "output" if they do not already exist.
+     * Creates the local directories "classifier_input" and "output", and the directory of a feature space in each, if
+     * they do not already exist.
      *
+     * @param directory the directory of the feature space, empty for the pos space.
      * @throws IOException if there is an error creating the directories
      */
-    public static void createLocalDirectories() throws IOException {
-        Path path = Paths.get("classifier_input");
+    public static void createLocalDirectories(String directory) throws IOException {
+        Path path = Paths.get("classifier_input", directory);
         if (!Files.exists(path)) {
-            Files.createDirectory(path);
+            Files.createDirectories(path);
         }
-        path = Paths.get("output");
+        path = Paths.get("output", directory);
         if (!Files.exists(path)) {
-            Files.createDirectory(path);
+            Files.createDirectories(path);
         }
     }
 
@@ -111,15 +222,39 @@ public class PostProcessor {
      * @return the S3 object
      */
     private static S3Object getS3Object(String bucketName, String key) {
+        // Download the file
+        return getS3Client().getObject(new GetObjectRequest(bucketName, key));
+    }
+
+    /**
+     * Lists the keys of the objects of an S3 bucket that start with a prefix.
+     *
+     * @param bucketName the name of the S3 bucket
+     * @param prefix the prefix of the keys
+     * @return the sorted keys
+     */
+    private static List<String> listS3Keys(String bucketName, String prefix) {
+        AmazonS3 s3Client = getS3Client();
+        List<String> keys = new ArrayList<>();
+        ObjectListing listing = s3Client.listObjects(bucketName, prefix);
+        while (true) {
+            for (S3ObjectSummary summary : listing.getObjectSummaries())
+                keys.add(summary.getKey());
+            if (!listing.isTruncated())
+                break;
+            listing = s3Client.listNextBatchOfObjects(listing);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private static AmazonS3 getS3Client() {
         AWSCredentialsProvider credentialsProvider = new ProfileCredentialsProvider();
         AWSCredentials credentials = credentialsProvider.getCredentials();
 
-        AmazonS3 s3Client = AmazonS3ClientBuilder.standard()
+        return AmazonS3ClientBuilder.standard()
                 .withCredentials(new AWSStaticCredentialsProvider(credentials))
                 .withRegion(Regions.US_EAST_1)
                 .build();
-
-        // Download the file
-        return s3Client.getObject(new GetObjectRequest(bucketName, key));
     }
 }
\ No newline at end of file
@@ -0,0 +1,320 @@
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The skew mitigation of Step1. A few paths and noun pairs have far more records than the others, and each of them is
+ * reduced by a single task of Reducer1, which holds back the whole job. The heavy keys are salted across several
+ * reducers instead, each one reducing a disjoint part of the key, and the partial results are merged by a light second
+ * pass run by the driver once the job completed:
+ * <ul>
+ * <li>a heavy path is salted by the noun pair of its key, so each reducer counts the distinct pairs of its part, and
+ * the path meets DPmin if the sum of the partial counts does.</li>
+ * <li>a heavy noun pair is salted by the path of its value, so each reducer counts the occurrences of its own paths,
+ * and the merged result is the concatenation of the partial results.</li>
+ * </ul>
+ * The partial results are written to the "partial" side output, and the merged ones to files named like the outputs
+ * of Reducer1, which Step2 reads with them. DPmin and the counts are the same as without salting.
+ * <p>
+ * The heavy keys are read from the reports of a previous run: when SKEW_REPORT_THRESHOLD is set, Reducer1 writes every
+ * key with at least that many records to the "heavy" side output, as a line of the kind of the key, the key and its
+ * number of records. The SKEW_MAX_HEAVY_KEYS heaviest keys of the reports matched by SKEW_HEAVY_KEYS are salted, each
+ * one with a counter of its records in the HEAVY_KEY_RECORDS group.
+ */
+class SkewMitigation {
+
+    /**
+     * Counters of the salted keys.
+     */
+    enum SkewCounter {
+        SALTED_GROUPS,
+        HEAVY_KEYS_REPORTED
+    }
+
+    /**
+     * Configuration key of a glob matching the heavy key reports of a previous run. The keys are salted when it is set.
+     */
+    public static final String SKEW_HEAVY_KEYS = "SKEW_HEAVY_KEYS";
+    /**
+     * Configuration key of the number of heavy keys salted, the heaviest of the reports. Every salted key has its own
+     * counter, so it should be well below the counter limit of the cluster.
+     */
+    public static final String SKEW_MAX_HEAVY_KEYS = "SKEW_MAX_HEAVY_KEYS";
+    public static final int DEFAULT_SKEW_MAX_HEAVY_KEYS = 32;
+    /**
+     * Configuration key of the number of reducers a heavy key is salted across.
+     */
+    public static final String SKEW_SALTS = "SKEW_SALTS";
+    public static final int DEFAULT_SKEW_SALTS = 8;
+    /**
+     * Configuration key of the number of records from which Reducer1 reports a key as heavy, 0 to report none.
+     */
+    public static final String SKEW_REPORT_THRESHOLD = "SKEW_REPORT_THRESHOLD";
+    /**
+     * Configuration key of the heavy keys selected by the driver, one "kind \t key" line per key.
+     */
+    static final String SKEW_SELECTED_KEYS = "SKEW_SELECTED_KEYS";
+    /**
+     * The named outputs of Step1 the heavy key reports and the partial results are written to.
+     */
+    public static final String HEAVY_OUTPUT = "heavy";
+    public static final String PARTIAL_OUTPUT = "partial";
+    /**
+     * The kinds of the keys, in the reports and the partial results.
+     */
+    static final String PATH = "path";
+    static final String PAIR = "pair";
+    /**
+     * The counter group of the records of every heavy key.
+     */
+    static final String HEAVY_KEY_RECORDS = "HEAVY_KEY_RECORDS";
+    /**
+     * The suffix of the merged outputs, matched by the globs of the outputs of Reducer1.
+     */
+    private static final String MERGED_SUFFIX = "-r-merged";
+
+    private final Set<PathWritable> heavyPaths;
+    private final Set<NounPairWritable> heavyPairs;
+    private final int salts;
+    private final boolean saltPaths;
+
+    /**
+     * @param conf the configuration of the job, holding the selected heavy keys.
+     */
+    SkewMitigation(Configuration conf) {
+        heavyPaths = new HashSet<>();
+        heavyPairs = new HashSet<>();
+        salts = conf.getInt(SKEW_SALTS, DEFAULT_SKEW_SALTS);
+        // The sketches of the HyperLogLog mode cannot be split by pair, so the paths are not salted then
+        saltPaths = !conf.getBoolean(PathPairSketches.HLL_DPMIN, false);
+        for (String line : conf.get(SKEW_SELECTED_KEYS, "").split("\n")) {
+            int tab = line.indexOf('\t');
+            if (tab < 0)
+                continue;
+            String key = line.substring(tab + 1);
+            if (line.startsWith(PATH)) {
+                PathWritable path = new PathWritable();
+                path.set(key);
+                heavyPaths.add(path);
+            } else {
+                int delimiter = key.indexOf(NounPairWritable.DELIMITER);
+                NounPairWritable nounPair = new NounPairWritable();
+                nounPair.set(key.substring(0, delimiter), key.substring(delimiter + 1));
+                heavyPairs.add(nounPair);
+            }
+        }
+    }
+
+    /**
+     * @param key a key of Step1.
+     * @return true if the group of the key is salted.
+     */
+    boolean isSalted(Step1Key key) {
+        return key.isNounPair() ? heavyPairs.contains(key.getNounPair()) : saltPaths && heavyPaths.contains(key.getPath());
+    }
+
+    /**
+     * @param key           a key of Step1.
+     * @param value         the value of the key.
+     * @param numPartitions the number of partitions.
+     * @return the partition of the key: the partition of its group, moved by the salt of the key if it is salted.
+     */
+    int getPartition(Step1Key key, Step1Value value, int numPartitions) {
+        int partition = (key.groupHashCode() & Integer.MAX_VALUE) % numPartitions;
+        if (!isSalted(key))
+            return partition;
+        int saltHash = key.isNounPair() ? value.getPathCount().getPath().hashCode() : key.getNounPair().hashCode();
+        // The hash of a short packed path has few varying low bits, so it is mixed before its low bits are used
+        saltHash ^= saltHash >>> 16;
+        saltHash *= 0x85ebca6b;
+        saltHash ^= saltHash >>> 13;
+        saltHash *= 0xc2b2ae35;
+        saltHash ^= saltHash >>> 16;
+        return (partition + (saltHash & Integer.MAX_VALUE) % salts) % numPartitions;
+    }
+
+    /**
+     * Selects the heavy keys of the reports matched by SKEW_HEAVY_KEYS into the configuration of the job, and adds the
+     * side outputs of the reports and of the partial results.
+     *
+     * @param job the job of Step1.
+     * @throws IOException
+     */
+    static void configure(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        if (conf.getInt(SKEW_REPORT_THRESHOLD, 0) > 0)
+            MultipleOutputs.addNamedOutput(job, HEAVY_OUTPUT, TextOutputFormat.class, Text.class, Text.class);
+        String reports = conf.get(SKEW_HEAVY_KEYS);
+        if (reports == null || reports.isEmpty())
+            return;
+        // The records of a key salted in the previous run are reported by several reducers
+        Map<String, long[]> records = new HashMap<>();
+        Path glob = new Path(reports);
+        FileSystem fs = glob.getFileSystem(conf);
+        FileStatus[] files = fs.globStatus(glob);
+        if (files != null) {
+            CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+            for (FileStatus file : files) {
+                // The reports are compressed with the intermediate codec, which their extension tells
+                CompressionCodec codec = codecs.getCodec(file.getPath());
+                InputStream in = codec == null ? fs.open(file.getPath()) : codec.createInputStream(fs.open(file.getPath()));
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int tab = line.lastIndexOf('\t');
+                        if (tab < 0)
+                            continue;
+                        records.computeIfAbsent(line.substring(0, tab), k -> new long[1])[0] += Long.parseLong(line.substring(tab + 1));
+                    }
+                }
+            }
+        }
+        List<Map.Entry<String, long[]>> heaviest = new ArrayList<>(records.entrySet());
+        heaviest.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        StringBuilder selected = new StringBuilder();
+        int maxHeavyKeys = conf.getInt(SKEW_MAX_HEAVY_KEYS, DEFAULT_SKEW_MAX_HEAVY_KEYS);
+        for (int i = 0; i < heaviest.size() && i < maxHeavyKeys; i++)
+            selected.append(heaviest.get(i).getKey()).append('\n');
+        System.out.println("Skew mitigation: salting " + Math.min(heaviest.size(), maxHeavyKeys) + " heavy keys");
+        conf.set(SKEW_SELECTED_KEYS, selected.toString());
+        MultipleOutputs.addNamedOutput(job, PARTIAL_OUTPUT, SequenceFileOutputFormat.class, Text.class, Text.class);
+    }
+
+    /**
+     * The second pass of the salted keys: merges the partial results of Step1 into files of its output, named like the
+     * outputs of Reducer1 so that Step2 reads them with the others, in the directory of the feature space of the keys.
+     * Does nothing if no key was salted.
+     *
+     * @param job the completed job of Step1.
+     * @throws IOException
+     */
+    static void mergePartials(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        if (conf.get(SKEW_SELECTED_KEYS, "").isEmpty())
+            return;
+        Path output = FileOutputFormat.getOutputPath(job);
+        FileSystem fs = output.getFileSystem(conf);
+        Map<String, long[]> pathCounts = new TreeMap<>();
+        Map<String, StringBuilder> pairPaths = new TreeMap<>();
+        FileStatus[] files = fs.globStatus(new Path(output, PARTIAL_OUTPUT + "-r-*"));
+        if (files != null) {
+            Text key = new Text();
+            Text value = new Text();
+            for (FileStatus file : files) {
+                try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(file.getPath()))) {
+                    while (reader.next(key, value)) {
+                        String line = key.toString();
+                        String kindlessKey = line.substring(line.indexOf('\t') + 1);
+                        if (line.startsWith(PATH))
+                            pathCounts.computeIfAbsent(kindlessKey, k -> new long[1])[0] += Long.parseLong(value.toString());
+                        else
+                            pairPaths.computeIfAbsent(kindlessKey, k -> new StringBuilder()).append(value);
+                    }
+                }
+            }
+        }
+        int DPmin = FeatureDictionary.getThresholds(conf)[0];
+        Class<? extends CompressionCodec> codecClass = IntermediateCompression.getCodecClass(conf);
+        CompressionCodec codec = codecClass == null ? null : ReflectionUtils.newInstance(codecClass, conf);
+        int merged = 0;
+        for (String space : FeatureSpaces.getSpaces(conf)) {
+            // The keys of the words space are tagged, and written without their tag
+            boolean words = FeatureSpaces.WORDS.equals(space);
+            Map<String, long[]> spacePathCounts = new TreeMap<>();
+            for (Map.Entry<String, long[]> entry : pathCounts.entrySet())
+                if (FeatureSpaces.isWordsPath(entry.getKey()) == words)
+                    spacePathCounts.put(words ? entry.getKey().substring(1) : entry.getKey(), entry.getValue());
+            Map<String, StringBuilder> spacePairPaths = new TreeMap<>();
+            for (Map.Entry<String, StringBuilder> entry : pairPaths.entrySet())
+                if (FeatureSpaces.isWordsPath(entry.getKey()) == words)
+                    spacePairPaths.put(words ? entry.getKey().substring(1) : entry.getKey(), entry.getValue());
+            merged += writeMerged(conf, FeatureSpaces.getPath(output, space), spacePathCounts, spacePairPaths, DPmin, codec);
+        }
+        System.out.println("Skew mitigation: merged " + pathCounts.size() + " salted paths, " + merged + " meeting DPmin, and " + pairPaths.size() + " salted noun pairs");
+    }
+
+    /**
+     * Writes the merged results of the salted keys of a feature space.
+     *
+     * @param conf       the configuration of the job.
+     * @param output     the directory of the outputs of the space.
+     * @param pathCounts the number of pairs of every salted path.
+     * @param pairPaths  the paths of every salted pair.
+     * @param DPmin      the DPmin condition of the paths.
+     * @param codec      the codec of the outputs, null if they are not compressed.
+     * @return the number of salted paths meeting DPmin.
+     * @throws IOException
+     */
+    private static int writeMerged(Configuration conf, Path output, Map<String, long[]> pathCounts, Map<String, StringBuilder> pairPaths, int DPmin, CompressionCodec codec) throws IOException {
+        FileSystem fs = output.getFileSystem(conf);
+        List<String> paths = new ArrayList<>();
+        for (Map.Entry<String, long[]> entry : pathCounts.entrySet())
+            if (entry.getValue()[0] >= DPmin)
+                paths.add(entry.getKey());
+        // The merged files hold the same Writables as the side outputs of Reducer1
+        try (SequenceFile.Writer writer = createWriter(conf, new Path(output, FeatureDictionary.NAMED_OUTPUT + MERGED_SUFFIX), PathWritable.class, LongWritable.class, codec)) {
+            PathWritable dictionaryPath = new PathWritable();
+            for (String path : paths) {
+                dictionaryPath.set(path);
+                writer.append(dictionaryPath, new LongWritable(pathCounts.get(path)[0]));
+            }
+        }
+        if (conf.getBoolean(Step1.SPLIT_OUTPUTS, false)) {
+            try (SequenceFile.Writer writer = createWriter(conf, new Path(output, Step1.PAIRS_OUTPUT + MERGED_SUFFIX), NounPairWritable.class, PathCountsWritable.class, codec)) {
+                NounPairWritable nounPair = new NounPairWritable();
+                PathCountsWritable pairPathCounts = new PathCountsWritable();
+                for (Map.Entry<String, StringBuilder> entry : pairPaths.entrySet()) {
+                    nounPair.set(entry.getKey());
+                    pairPathCounts.set(entry.getValue());
+                    writer.append(nounPair, pairPathCounts);
+                }
+            }
+        } else {
+            // Like the regular output of Reducer1, the text file is compressed with the codec of its extension
+            Path part = new Path(output, "part" + MERGED_SUFFIX + (codec == null ? "" : codec.getDefaultExtension()));
+            try (FSDataOutputStream file = fs.create(part, true);
+                 OutputStream out = codec == null ? file : codec.createOutputStream(file);
+                 PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                for (String path : paths)
+                    writer.print("**\t" + path + "\n");
+                for (Map.Entry<String, StringBuilder> entry : pairPaths.entrySet())
+                    writer.print(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+        }
+        return paths.size();
+    }
+
+    private static SequenceFile.Writer createWriter(Configuration conf, Path file, Class<?> keyClass, Class<?> valueClass, CompressionCodec codec) throws IOException {
+        return SequenceFile.createWriter(conf, SequenceFile.Writer.file(file), SequenceFile.Writer.keyClass(keyClass), SequenceFile.Writer.valueClass(valueClass),
+                codec == null ? SequenceFile.Writer.compression(SequenceFile.CompressionType.NONE) : SequenceFile.Writer.compression(SequenceFile.CompressionType.BLOCK, codec));
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * A bounded cache of stemmed words in front of a Stemmer. Most of the words stemmed by a task are the same few
+ * thousand frequent nouns, so the stem of a word is kept once computed, and evicted with the CLOCK policy (a cheap
+ * approximation of LRU) when the cache is full.
+ * <p>
+ * Lookups are done directly on a slice of a char buffer: a hit neither allocates nor runs the Stemmer, and
+ * appendStem() does not allocate either when the cache is disabled.
+ */
+class StemCache {
+
+    /**
+     * Counters reporting the efficiency of the cache.
+     */
+    enum StemCacheCounter {
+        STEM_CACHE_HITS,
+        STEM_CACHE_MISSES
+    }
+
+    /**
+     * Configuration key of the number of words kept by the cache of every task, 0 disables the cache.
+     */
+    public static final String STEM_CACHE_SIZE = "STEM_CACHE_SIZE";
+    public static final int DEFAULT_STEM_CACHE_SIZE = 10000;
+
+    private final Stemmer stemmer;
+    private final int capacity;
+    private char[] wordBuffer;
+
+    private final String[] words;
+    private final String[] stems;
+    private final int[] hashes;
+    private final int[] next;
+    private final boolean[] referenced;
+    private final int[] buckets;
+    private int size;
+    private int hand;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param stemmer  the stemmer used on a miss.
+     * @param capacity the maximal number of words kept, 0 to stem every word.
+     */
+    StemCache(Stemmer stemmer, int capacity) {
+        this.stemmer = stemmer;
+        this.capacity = capacity;
+        wordBuffer = new char[16];
+        words = new String[capacity];
+        stems = new String[capacity];
+        hashes = new int[capacity];
+        next = new int[capacity];
+        referenced = new boolean[capacity];
+        int numOfBuckets = 1;
+        while (numOfBuckets < capacity)
+            numOfBuckets <<= 1;
+        buckets = new int[numOfBuckets];
+    }
+
+    /**
+     * Returns the stem of a word.
+     *
+     * @param word the word to stem.
+     * @return the stemmed word.
+     */
+    String stem(String word) {
+        int length = word.length();
+        ensureWordBuffer(length);
+        word.getChars(0, length, wordBuffer, 0);
+        return stem(wordBuffer, 0, length);
+    }
+
+    /**
+     * Returns the stem of a word held in a slice of a buffer.
+     *
+     * @param buffer a buffer holding the word.
+     * @param start  the offset of the word in the buffer.
+     * @param length the length of the word.
+     * @return the stemmed word.
+     */
+    String stem(char[] buffer, int start, int length) {
+        if (capacity == 0) {
+            misses++;
+            stemmer.stem(buffer, start, length);
+            return stemmer.toString();
+        }
+        return stems[lookup(buffer, start, length)];
+    }
+
+    /**
+     * Appends the stem of a word held in a slice of a buffer to a builder.
+     *
+     * @param buffer  a buffer holding the word.
+     * @param start   the offset of the word in the buffer.
+     * @param length  the length of the word.
+     * @param builder the builder the stem is appended to.
+     */
+    void appendStem(char[] buffer, int start, int length, StringBuilder builder) {
+        if (capacity == 0) {
+            misses++;
+            builder.append(stemmer.getResultBuffer(), 0, stemmer.stem(buffer, start, length));
+            return;
+        }
+        builder.append(stems[lookup(buffer, start, length)]);
+    }
+
+    /**
+     * Finds the entry of a word, stemming it and adding it to the cache on a miss.
+     *
+     * @return the entry of the word.
+     */
+    private int lookup(char[] buffer, int start, int length) {
+        int hash = hash(buffer, start, length);
+        int bucket = hash & (buckets.length - 1);
+        for (int entry = buckets[bucket] - 1; entry >= 0; entry = next[entry] - 1) {
+            if (hashes[entry] == hash && matches(words[entry], buffer, start, length)) {
+                referenced[entry] = true;
+                hits++;
+                return entry;
+            }
+        }
+        misses++;
+        stemmer.stem(buffer, start, length);
+        String stem = stemmer.toString();
+        int entry = size < capacity ? size++ : evict();
+        words[entry] = new String(buffer, start, length);
+        stems[entry] = stem;
+        hashes[entry] = hash;
+        referenced[entry] = false;
+        next[entry] = buckets[bucket];
+        buckets[bucket] = entry + 1;
+        return entry;
+    }
+
+    /**
+     * Moves the clock hand past the recently used entries, clearing their reference bit, and frees the first entry
+     * that was not used since the hand last passed it.
+     *
+     * @return the freed entry.
+     */
+    private int evict() {
+        while (referenced[hand]) {
+            referenced[hand] = false;
+            hand = (hand + 1) % capacity;
+        }
+        int entry = hand;
+        hand = (hand + 1) % capacity;
+
+        int bucket = hashes[entry] & (buckets.length - 1);
+        if (buckets[bucket] == entry + 1) {
+            buckets[bucket] = next[entry];
+        } else {
+            int previous = buckets[bucket] - 1;
+            while (next[previous] != entry + 1)
+                previous = next[previous] - 1;
+            next[previous] = next[entry];
+        }
+        return entry;
+    }
+
+    private void ensureWordBuffer(int length) {
+        if (length > wordBuffer.length)
+            wordBuffer = new char[Math.max(length, wordBuffer.length * 2)];
+    }
+
+    private static int hash(char[] buffer, int start, int length) {
+        int h = 0;
+        for (int i = start; i < start + length; i++)
+            h = 31 * h + buffer[i];
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String word, char[] buffer, int start, int length) {
+        if (word.length() != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (word.charAt(i) != buffer[start + i])
+                return false;
+        return true;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+}
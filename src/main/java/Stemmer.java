@@ -49,24 +49,38 @@ class Stemmer
             i_end, /* offset to end of stemmed word */
             j, k;
     private static final int INC = 50;
-    /* unit of size whereby b is increased */
+    /* initial size of b, which is doubled whenever a longer word is added */
+    private static final ThreadLocal<Stemmer> THREAD_STEMMER = ThreadLocal.withInitial(Stemmer::new);
+
     public Stemmer()
     {  b = new char[INC];
         i = 0;
         i_end = 0;
     }
 
+    /**
+     * Returns the Stemmer confined to the calling thread. A Stemmer holds the
+     * word being stemmed in its own buffer, so an instance must never be used
+     * by two threads at once, as the threads of a MultithreadedMapper would
+     * if they shared the Stemmer of their Mapper.
+     */
+    public static Stemmer forCurrentThread() { return THREAD_STEMMER.get(); }
+
+    private void ensureCapacity(int size)
+    {  if (size > b.length)
+    {  char[] new_b = new char[Math.max(size, b.length * 2)];
+        System.arraycopy(b, 0, new_b, 0, i);
+        b = new_b;
+    }
+    }
+
     /**
      * Add a character to the word being stemmed.  When you are finished
      * adding characters, you can call stem(void) to stem the word.
      */
 
     public void add(char ch)
-    {  if (i == b.length)
-    {  char[] new_b = new char[i+INC];
-        for (int c = 0; c < i; c++) new_b[c] = b[c];
-        b = new_b;
-    }
+    {  ensureCapacity(i+1);
         b[i++] = ch;
     }
 
@@ -77,12 +91,108 @@ class Stemmer
      */
 
     public void add(char[] w, int wLen)
-    {  if (i+wLen >= b.length)
-    {  char[] new_b = new char[i+wLen+INC];
-        for (int c = 0; c < i; c++) new_b[c] = b[c];
-        b = new_b;
+    {  add(w, 0, wLen);
     }
-        for (int c = 0; c < wLen; c++) b[i++] = w[c];
+
+    /** Adds wLen characters of a char[] array, starting at offset off, to the
+     * word being stemmed.
+     */
+
+    public void add(char[] w, int off, int wLen)
+    {  ensureCapacity(i+wLen);
+        System.arraycopy(w, off, b, i, wLen);
+        i += wLen;
+    }
+
+    /**
+     * Stems a whole word held in a portion of a char[] array, discarding
+     * anything added before.  Nothing is allocated: the result is read with
+     * getResultBuffer(), or copied out with getResult().
+     * Returns the length of the result.
+     */
+    public int stem(char[] w, int off, int wLen)
+    {  i = 0;
+        add(w, off, wLen);
+        stem();
+        return i_end;
+    }
+
+    /**
+     * Stems a whole word given as a CharSequence, discarding anything added
+     * before.  Returns the length of the result, see stem(char[], int, int).
+     */
+    public int stem(CharSequence w)
+    {  int wLen = w.length();
+        i = 0;
+        ensureCapacity(wLen);
+        for (int c = 0; c < wLen; c++) b[i++] = w.charAt(c);
+        stem();
+        return i_end;
+    }
+
+    /**
+     * Stems a whole word given as a UTF-8 encoded portion of a byte[] array,
+     * discarding anything added before.  Malformed sequences are replaced by
+     * U+FFFD.  Returns the length of the result, see stem(char[], int, int).
+     */
+    public int stem(byte[] utf8, int off, int len)
+    {  i = 0;
+        ensureCapacity(len);
+        int end = off + len;
+        while (off < end)
+        {  int c = utf8[off++] & 0xff;
+            int extra = c < 0x80 ? 0 : c < 0xc0 ? -1 : c < 0xe0 ? 1 : c < 0xf0 ? 2 : c < 0xf8 ? 3 : -1;
+            if (extra > 0) c &= 0x3f >> extra;
+            for (int e = 0; e < extra; e++)
+            {  if (off == end || (utf8[off] & 0xc0) != 0x80) { extra = -1; break; }
+                c = (c << 6) | (utf8[off++] & 0x3f);
+            }
+            if (extra < 0) b[i++] = '\ufffd';
+            else if (c >= 0x10000) { b[i++] = Character.highSurrogate(c); b[i++] = Character.lowSurrogate(c); }
+            else b[i++] = (char) c;
+        }
+        stem();
+        return i_end;
+    }
+
+    /**
+     * Copies the result of the stemming process to dest, starting at destOff.
+     * Returns the length of the result.
+     */
+    public int getResult(char[] dest, int destOff)
+    {  System.arraycopy(b, 0, dest, destOff, i_end);
+        return i_end;
+    }
+
+    /**
+     * Writes the result of the stemming process to dest as UTF-8, starting at
+     * destOff.  The result is never longer than the word stemmed, so dest needs
+     * at most as many free bytes as the UTF-8 input had.  Returns the number of
+     * bytes written.
+     */
+    public int getResult(byte[] dest, int destOff)
+    {  int o = destOff;
+        for (int c = 0; c < i_end; c++)
+        {  int ch = b[c];
+            if (ch < 0x80) dest[o++] = (byte) ch;
+            else if (ch < 0x800)
+            {  dest[o++] = (byte) (0xc0 | (ch >> 6));
+                dest[o++] = (byte) (0x80 | (ch & 0x3f));
+            }
+            else if (Character.isHighSurrogate((char) ch) && c + 1 < i_end && Character.isLowSurrogate(b[c+1]))
+            {  ch = Character.toCodePoint((char) ch, b[++c]);
+                dest[o++] = (byte) (0xf0 | (ch >> 18));
+                dest[o++] = (byte) (0x80 | ((ch >> 12) & 0x3f));
+                dest[o++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                dest[o++] = (byte) (0x80 | (ch & 0x3f));
+            }
+            else
+            {  dest[o++] = (byte) (0xe0 | (ch >> 12));
+                dest[o++] = (byte) (0x80 | ((ch >> 6) & 0x3f));
+                dest[o++] = (byte) (0x80 | (ch & 0x3f));
+            }
+        }
+        return o - destOff;
     }
 
     /**
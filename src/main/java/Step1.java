@@ -4,33 +4,94 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.S3Object;
+import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.bloom.BloomFilter;
 
 import java.io.*;
-import java.util.Arrays;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 
 public class Step1 {
 
-    public static class Mapper1 extends Mapper<LongWritable, Text, Text, Text> {
-        public static final String DELIMITER_1 = "$";
-        public static final String DELIMITER_2 = ":";
+    /**
+     * Configuration key of the minimal number of distinct noun pairs of a dependency path kept as a feature. It is also
+     * read by Step2, for the DPmin condition of feature hashing and the feature dictionary.
+     */
+    public static final String DPMIN = "DPMIN";
+    public static final int DEFAULT_DPMIN = 3;
+    /**
+     * Configuration key of the path extractor used by Mapper1: "subtree" (default) or "lca", see PathExtractor.
+     */
+    public static final String PATH_EXTRACTOR = "PATH_EXTRACTOR";
+    /**
+     * Configuration key of the maximal number of dependency links of a path extracted by Mapper1, 0 for no limit.
+     */
+    public static final String MAX_PATH_LENGTH = "MAX_PATH_LENGTH";
+    /**
+     * Configuration key of the split outputs of Reducer1: the paths are only written to the dictionary side output and
+     * the noun pairs to the pairs side output, both as sequence files, and nothing is written to the regular output.
+     */
+    public static final String SPLIT_OUTPUTS = "SPLIT_OUTPUTS";
+    /**
+     * The named output of Step1 the noun pairs and their dependency paths are written to with split outputs.
+     */
+    public static final String PAIRS_OUTPUT = "pairs";
+    public static final String HYPERNYM_TXT_PATH = "hypernym.txt";
+    /**
+     * Configuration key of the number of threads of a map task of Step1. Above 1, Mapper1 runs under a
+     * MultithreadedMapper.
+     */
+    public static final String MAPPER_THREADS = "MAPPER_THREADS";
+
+    /**
+     * The Mapper of Step1. All the state of the parsing, the path extraction and the stemming is held by the instance,
+     * and the stemmer is the one of the thread that sets the instance up, so the instances can run on the threads of a
+     * MultithreadedMapper, each with its own instance.
+     */
+    public static class Mapper1 extends Mapper<LongWritable, Text, Step1Key, Step1Value> implements PathExtractor.PathConsumer {
         public static final String BUCKET_NAME = "bucket1638974297772";
-//        public static final String HYPERNYM_TXT_PATH = "hypernym.txt";
-        private Stemmer stemmer;
-//        private HashMap<String, Boolean> testSet;
+        private StemCache stemCache;
+        private BiarcParser parser;
+        private PosCodebook codebook;
+        private DependencyTree tree;
+        private PathExtractor pathExtractor;
+        private Context context;
+        private StringBuilder firstBuilder;
+        private StringBuilder secondBuilder;
+        private Step1Key pathKey;
+        private Step1Key nounPairKey;
+        private Step1Value emptyValue;
+        private Step1Value pathCountValue;
+        private PathPairAggregator aggregator;
+        private HypernymFilter hypernymFilter;
+        private boolean featureHashing;
+        private PathPairSketches pathSketches;
+        private PathTemplateCache templateCache;
+        // The paths pruned by their length in the biarcs found in the template cache
+        private long templatePrunedPaths;
+        private boolean posPaths;
+        private boolean wordsPaths;
 
         /**
          * Setup the Mapper node.
@@ -39,135 +100,190 @@ public class Step1 {
          */
         @Override
         public void setup(Context context) throws IOException {
-//            testSet = new HashMap<>();
-            stemmer = new Stemmer();
-//            BufferedReader br;
-//            AmazonS3 s3 = AmazonS3ClientBuilder.standard().withRegion(Regions.US_EAST_1).build();
-//            S3Object object = s3.getObject(new GetObjectRequest(BUCKET_NAME, HYPERNYM_TXT_PATH));
-//            br = new BufferedReader(new InputStreamReader(object.getObjectContent()));
-//            br = new BufferedReader(new FileReader("/home/spl211/IdeaProjects/DSP_project_3/hypernym.txt"));
-//            createTestSetHashMap(br);
+            stemCache = new StemCache(Stemmer.forCurrentThread(), context.getConfiguration().getInt(StemCache.STEM_CACHE_SIZE, StemCache.DEFAULT_STEM_CACHE_SIZE));
+            parser = new BiarcParser();
+            codebook = new PosCodebook();
+            tree = new DependencyTree();
+            pathExtractor = PathExtractor.forName(context.getConfiguration().get(PATH_EXTRACTOR, "subtree"), context.getConfiguration().getInt(MAX_PATH_LENGTH, 0));
+            posPaths = FeatureSpaces.getSpaces(context.getConfiguration()).contains(FeatureSpaces.POS);
+            wordsPaths = FeatureSpaces.getSpaces(context.getConfiguration()).contains(FeatureSpaces.WORDS);
+            // The paths of the words space depend on the words of the biarc, not only on its shape
+            int templateCacheSize = context.getConfiguration().getInt(PathTemplateCache.PATH_TEMPLATE_CACHE_SIZE, 0);
+            if (templateCacheSize > 0 && !wordsPaths)
+                templateCache = new PathTemplateCache(templateCacheSize);
+            this.context = context;
+            firstBuilder = new StringBuilder();
+            secondBuilder = new StringBuilder();
+            pathKey = new Step1Key();
+            pathKey.setPath();
+            nounPairKey = new Step1Key();
+            nounPairKey.setNounPair();
+            emptyValue = new Step1Value();
+            emptyValue.setEmpty();
+            pathCountValue = new Step1Value();
+            pathCountValue.setPathCount().setCount(1);
+            // With feature hashing, DPmin is approximated from the pair records and the path records are not written
+            featureHashing = context.getConfiguration().getBoolean(FeatureHashing.FEATURE_HASHING, false);
+            // The memory budget of the task is shared by the instances of its threads
+            int budgetMb = Math.max(1, context.getConfiguration().getInt(PathPairAggregator.IN_MAPPER_BUDGET_MB, PathPairAggregator.DEFAULT_IN_MAPPER_BUDGET_MB)
+                    / context.getConfiguration().getInt(MAPPER_THREADS, 1));
+            // In the HyperLogLog mode, the sketches of the paths replace the path records
+            if (context.getConfiguration().getBoolean(PathPairSketches.HLL_DPMIN, false) && !featureHashing)
+                pathSketches = new PathPairSketches(context.getConfiguration(), budgetMb);
+            if (context.getConfiguration().getBoolean(PathPairAggregator.IN_MAPPER_COMBINING, false))
+                aggregator = new PathPairAggregator(budgetMb, !featureHashing && pathSketches == null);
+            // With feature hashing, every pair record is needed for the sketch, and Reducer1 applies the filter
+            if (context.getConfiguration().getBoolean(HypernymFilter.HYPERNYM_FILTER, false) && !featureHashing)
+                hypernymFilter = HypernymFilter.readFromCache();
         }
 
-        /**
-         * Creates a hash map of related words from the given input stream.
-         *
-         * @param bufferedReader a BufferedReader object containing input data in the format "word1 word2 True/False"
-         */
-//        private void createTestSetHashMap(BufferedReader bufferedReader) throws IOException {
-//            String line;
-//            while ((line = bufferedReader.readLine()) != null) {
-//                String[] pieces = line.split("\\s");
-//                stemmer.add(pieces[0].toCharArray(), pieces[0].length());
-//                stemmer.stem();
-//                pieces[0] = stemmer.toString();
-//                stemmer.add(pieces[1].toCharArray(), pieces[1].length());
-//                stemmer.stem();
-//                pieces[1] = stemmer.toString();
-//                testSet.put(pieces[0] + DELIMITER_1 + pieces[1], pieces[2].equals("True"));
-//            }
-//        }
-
         /**
          * Input:
          * key - lineId value - head_word \t syntactic-ngram \t total_count \t counts_by_year
          * syntactic-ngram format : word/pos-tag/dep-label/head-index
          * <p>
          * Output:
-         * key - <N1$N2>  value - Dependency_path_1 (NN:VB:IT:NN)
-         * key - Dependency_path_1 (NN:VB:IT:NN)  value - <N1$N2>
+         * key - <N1$N2>  value - Dependency_path_1 (NN:VB:IT:NN) $ 1
+         * key - Dependency_path_1 (NN:VB:IT:NN) , <N1$N2>  value - (empty)
          */
         @Override
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-            String inputLine = value.toString().split("\t")[1];
-            System.out.println("[DEBUG]: inputLine: " + inputLine);
-            String[] ngram_parts = inputLine.split(" ");
-            System.out.println("[DEBUG]: ngram_parts: " + Arrays.toString(ngram_parts));
-            Node[] nodes = createNodesFromNgramParts(ngram_parts);
-            if(nodes == null){
+            if (!parser.parse(value)) {
                 return;
             }
-            Node root = constructParsedTree(nodes);
-            searchDependencyPath(root, "", root, context);
+            // A biarc of a known shape has the paths of its template, between its own words
+            if (templateCache != null) {
+                PathTemplateCache.Template template = templateCache.get(parser, codebook);
+                if (template != null) {
+                    for (int i = 0; i < template.size(); i++) {
+                        pathKey.getPath().set(template.getPath(i));
+                        write(template.getFirst(i), template.getSecond(i));
+                    }
+                    templatePrunedPaths += template.getPrunedPaths();
+                    return;
+                }
+            }
+            long prunedPaths = pathExtractor.getPrunedPaths();
+            tree.reset(parser, codebook);
+            pathExtractor.extract(tree, this);
+            if (templateCache != null)
+                templateCache.finishRecording(pathExtractor.getPrunedPaths() - prunedPaths);
         }
 
         /**
-         * Transforms a biarc into a an array of Nodes
+         * Writes a dependency path found by the path extractor, together with its noun pair, or adds them to the
+         * in-mapper aggregation. The pair record is skipped when the hypernym filter tells the pair is not labeled,
+         * while the path record is always written for the DPmin condition, except with feature hashing. In the
+         * HyperLogLog mode, the pair is added to the sketch of the path instead, and the path record is only written
+         * for the sampled paths. With the template cache, the path is also recorded in the template of the biarc.
+         * The path is written in every feature space of the job.
          *
-         * @param ngramParts an array of Strings, each index being a biarc
-         * @return an array of Nodes, each one containing a biarc in an accessible container.
+         * @param pathNodes the nodes of the path, from the first noun of the pair to the second one.
+         * @param length    the number of nodes in the path.
+         * @throws IOException
+         * @throws InterruptedException
          */
-        private Node[] createNodesFromNgramParts(String[] ngramParts) {
-            Node[] partsAsNodes = new Node[ngramParts.length];
-            for (int i = 0; i < ngramParts.length; i++) {
-                String[] ngramEntryComponents = ngramParts[i].split("/");
-                //Delete non-numeric characters
-                final String FIND_NON_NUMERIC_CHARS_REGEX = "[^a-zA-Z ]+";
-                System.out.println("[DEBUG]: ngramEntryComponents: " + Arrays.toString(ngramEntryComponents));
-                ngramEntryComponents[0] = ngramEntryComponents[0].replaceAll(FIND_NON_NUMERIC_CHARS_REGEX, "");
-                ngramEntryComponents[1] = ngramEntryComponents[1].replaceAll(FIND_NON_NUMERIC_CHARS_REGEX, "");
-                if (ngramEntryComponents.length != 4 || ngramEntryComponents[0].replaceAll(FIND_NON_NUMERIC_CHARS_REGEX, "").equals("") || ngramEntryComponents[1].replaceAll(FIND_NON_NUMERIC_CHARS_REGEX, "").equals(""))
-                    return null;
-                partsAsNodes[i] = new Node(ngramEntryComponents, stemmer);
+        @Override
+        public void accept(int[] pathNodes, int length) throws IOException, InterruptedException {
+            int first = pathNodes[0];
+            int second = pathNodes[length - 1];
+            if (posPaths) {
+                tree.setDependencyPath(pathKey.getPath(), pathNodes, length);
+                if (templateCache != null)
+                    templateCache.record(first, second, pathKey.getPath());
+                write(first, second);
+            }
+            if (wordsPaths) {
+                tree.setWordsDependencyPath(pathKey.getPath(), pathNodes, length, stemCache);
+                write(first, second);
             }
-            return partsAsNodes;
         }
 
         /**
-         * Transforms an array of Nodes into a tree, which represents the dependencies defined in the original biarc.
+         * Writes the path held by the path key between two nouns of the parsed biarc, as described in accept().
          *
-         * @param nodes an array of Nodes.
-         * @return the root of the tree.
+         * @param first  the token of the first noun of the pair.
+         * @param second the token of the second noun of the pair.
+         * @throws IOException
+         * @throws InterruptedException
          */
-        private Node constructParsedTree(Node[] nodes) {
-            int rootIndex = 0;
-            for (int i = 0; i < nodes.length; i++) {
-                if (nodes[i].getFather() > 0)
-                    nodes[nodes[i].getFather() - 1].addChild(nodes[i]);
-                else
-                    rootIndex = i;
+        private void write(int first, int second) throws IOException, InterruptedException {
+            firstBuilder.setLength(0);
+            stemCache.appendStem(parser.getLetters(), parser.getWordStart(first), parser.getWordLength(first), firstBuilder);
+            secondBuilder.setLength(0);
+            stemCache.appendStem(parser.getLetters(), parser.getWordStart(second), parser.getWordLength(second), secondBuilder);
+            nounPairKey.getNounPair().set(firstBuilder, secondBuilder);
+            boolean writePair = hypernymFilter == null || hypernymFilter.mightContain(nounPairKey.getNounPair());
+            if (pathSketches != null) {
+                if (pathSketches.add(pathKey.getPath(), nounPairKey.getNounPair()))
+                    pathSketches.flush(context);
+                if (pathSketches.isSampled(pathKey.getPath())) {
+                    pathKey.getNounPair().set(nounPairKey.getNounPair());
+                    context.write(pathKey, emptyValue);
+                }
+            }
+            if (aggregator != null) {
+                if (aggregator.add(nounPairKey.getNounPair(), pathKey.getPath(), writePair))
+                    aggregator.flush(context);
+                return;
+            }
+            if (!featureHashing && pathSketches == null) {
+                pathKey.getNounPair().set(nounPairKey.getNounPair());
+                context.write(pathKey, emptyValue);
+            }
+            if (writePair) {
+                pathCountValue.getPathCount().getPath().set(pathKey.getPath());
+                context.write(nounPairKey, pathCountValue);
             }
-            return nodes[rootIndex];
         }
 
         /**
-         * A recursive method to find all shortest paths between nouns in a syntactic tree.
+         * Flushes the in-mapper aggregation and reports the counters of the Mapper node.
          *
-         * @param node           a node that is inquired as to being a start or end of a shortest path.
-         * @param dependencyPath an accumulator that holds the shortest path so far as a String.
-         * @param pathStart      the first node of the noun pair.
-         * @param context        the Map-Reduce job context.
-         * @throws IOException
-         * @throws InterruptedException
+         * @param context the Map-Reduce job context.
          */
-        private void searchDependencyPath(Node node, String dependencyPath, Node pathStart, Context context) throws IOException, InterruptedException {
-            // Found the first Noun
-            if (node.isNoun() && dependencyPath.isEmpty())
-                for (Node child : node.getChildren())
-                    searchDependencyPath(child, node.getDepencdencyPathComponent(), node, context);
-                // Found the second Noun
-            else if (node.isNoun()) {
-                Text fullDependencyPath = new Text(dependencyPath + DELIMITER_2 + node.getDepencdencyPathComponent());
-                Text nounPair = new Text(pathStart.getStemmedWord() + DELIMITER_1 + node.getStemmedWord());
-                context.write(fullDependencyPath, nounPair);
-                context.write(nounPair, new Text(fullDependencyPath + DELIMITER_1 + "1"));
-
-                //Keep search for another noun
-                searchDependencyPath(node, "", node, context);
-            } else {
-                for (Node child : node.getChildren())
-                    // If dependencyPath is empty it means we did not found any noun yet, so we will keep the dependency path empty
-                    searchDependencyPath(child, dependencyPath.isEmpty() ? dependencyPath : dependencyPath + DELIMITER_2 + node.getDepencdencyPathComponent(), pathStart, context);
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            if (aggregator != null)
+                aggregator.flush(context);
+            if (pathSketches != null)
+                pathSketches.flush(context);
+            if (aggregator != null)
+                aggregator.reportCounters(context);
+            if (pathSketches != null)
+                pathSketches.reportCounters(context);
+            if (hypernymFilter != null) {
+                context.getCounter(HypernymFilter.HypernymFilterCounter.HYPERNYM_FILTER_KEPT_PAIRS).increment(hypernymFilter.getKept());
+                context.getCounter(HypernymFilter.HypernymFilterCounter.HYPERNYM_FILTER_DROPPED_PAIRS).increment(hypernymFilter.getDropped());
+            }
+            context.getCounter(StemCache.StemCacheCounter.STEM_CACHE_HITS).increment(stemCache.getHits());
+            context.getCounter(StemCache.StemCacheCounter.STEM_CACHE_MISSES).increment(stemCache.getMisses());
+            context.getCounter(PathExtractor.PathExtractorCounter.PATHS_PRUNED_BY_LENGTH).increment(pathExtractor.getPrunedPaths() + templatePrunedPaths);
+            if (templateCache != null) {
+                context.getCounter(PathTemplateCache.PathTemplateCounter.PATH_TEMPLATE_HITS).increment(templateCache.getHits());
+                context.getCounter(PathTemplateCache.PathTemplateCounter.PATH_TEMPLATE_MISSES).increment(templateCache.getMisses());
             }
         }
     }
 
-    public static class Combiner extends Reducer<Text, Text, Text, Text> {
-        public static final String DELIMITER_1 = "$";
+    public static class Combiner extends Reducer<Step1Key, Step1Value, Step1Key, Step1Value> {
+        private Map<PathWritable, long[]> countMap;
+        private Step1Value pathCountValue;
+        private Step1Value sketchValue;
+
+        @Override
+        public void setup(Context context) {
+            countMap = new HashMap<>();
+            pathCountValue = new Step1Value();
+            pathCountValue.setPathCount();
+            sketchValue = new Step1Value();
+        }
 
         /**
          * Reduces the input data. If the key is a noun pair, counts the occurrences of each dependency path in the values.
-         * If the key is a dependency path, writes the key and values to the Reducer context.
+         * If the key is a dependency path and one of its noun pairs, writes the key once, dropping the duplicates of the
+         * pair: the combiner groups the keys by path and pair, unlike Reducer1. The sketches of a path, keyed by the
+         * path and the empty pair, are merged into one.
          *
          * @param key     the key
          * @param values  the values
@@ -176,38 +292,106 @@ public class Step1 {
          * @throws InterruptedException if the operation is interrupted
          */
         @Override
-        protected void reduce(Text key, Iterable<Text> values, Reducer<Text, Text, Text, Text>.Context context) throws IOException, InterruptedException {
-            if (key.toString().split("\\$").length > 1) {
-                HashMap<String, Integer> countMap = new HashMap<>();
-                // Iterate over the values
-                for (Text value : values) {
-                    String[] dependencyPathProp = value.toString().split("\\$");
-                    String dependencyPathString = dependencyPathProp[0];
-                    String dependencyPathOccurrences = dependencyPathProp[1];
-                    if (!countMap.containsKey(dependencyPathString))
-                        countMap.put(dependencyPathString, Integer.parseInt(dependencyPathOccurrences));
-                    else {
-                        int count = countMap.get(dependencyPathString);
-                        countMap.put(dependencyPathString, count + Integer.parseInt(dependencyPathOccurrences));
-                    }
-                }
-                for (Map.Entry<String, Integer> entry : countMap.entrySet()) {
-                    context.write(key, new Text(entry.getKey() + DELIMITER_1 + entry.getValue()));
+        protected void reduce(Step1Key key, Iterable<Step1Value> values, Context context) throws IOException, InterruptedException {
+            if (key.isNounPair()) {
+                countPaths(values, countMap);
+                for (Map.Entry<PathWritable, long[]> entry : countMap.entrySet()) {
+                    pathCountValue.getPathCount().getPath().set(entry.getKey());
+                    pathCountValue.getPathCount().setCount(entry.getValue()[0]);
+                    context.write(key, pathCountValue);
                 }
             }
             // If the key is a dependency path
             else {
-                // Iterate over the values and write them to the Reducer context
-                for (Text value : values) context.write(key, value);
+                Iterator<Step1Value> iterator = values.iterator();
+                Step1Value first = iterator.next();
+                if (!first.isSketch()) {
+                    context.write(key, first);
+                    return;
+                }
+                // The values are reused by the iterator, so the first sketch is copied before the next one is read
+                HyperLogLog sketch = sketchValue.setSketch();
+                sketch.set(first.getSketch());
+                while (iterator.hasNext())
+                    sketch.merge(iterator.next().getSketch());
+                context.write(key, sketchValue);
             }
         }
     }
 
-    public static class Reducer1 extends Reducer<Text, Text, Text, Text> {
+    /**
+     * Sums the occurrences of each dependency path in the values of a noun pair key.
+     *
+     * @param values   the path counts of the noun pair.
+     * @param countMap the map to count the occurrences in, cleared first.
+     * @return the number of values.
+     */
+    static int countPaths(Iterable<Step1Value> values, Map<PathWritable, long[]> countMap) {
+        countMap.clear();
+        int records = 0;
+        for (Step1Value value : values) {
+            records++;
+            PathCountWritable pathCount = value.getPathCount();
+            long[] count = countMap.get(pathCount.getPath());
+            if (count == null)
+                countMap.put(new PathWritable(pathCount.getPath()), new long[]{pathCount.getCount()});
+            else
+                count[0] += pathCount.getCount();
+        }
+        return records;
+    }
+
+    /**
+     * Partitions the keys of Step1 by their path or their pair, so all the pairs of a path reach the same reducer,
+     * consistently with Step1Key.GroupingComparator. The heavy keys of the skew mitigation are salted across several
+     * reducers instead, see SkewMitigation.
+     */
+    public static class PathPartitioner extends Partitioner<Step1Key, Step1Value> implements Configurable {
+        private Configuration conf;
+        private SkewMitigation skewMitigation;
+
+        @Override
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+            if (!conf.get(SkewMitigation.SKEW_SELECTED_KEYS, "").isEmpty())
+                skewMitigation = new SkewMitigation(conf);
+        }
+
+        @Override
+        public Configuration getConf() {
+            return conf;
+        }
+
+        @Override
+        public int getPartition(Step1Key key, Step1Value value, int numPartitions) {
+            if (skewMitigation != null)
+                return skewMitigation.getPartition(key, value, numPartitions);
+            return (key.groupHashCode() & Integer.MAX_VALUE) % numPartitions;
+        }
+    }
+
+    public static class Reducer1 extends Reducer<Step1Key, Step1Value, Text, Text> {
 
         public static final String DELIMITER_1 = "#";
         public static final String DELIMITER_2 = "@";
         private int DPmin;
+        private boolean exactCounts;
+        private Map<PathWritable, long[]> countMap;
+        private NounPairWritable lastNounPair;
+        private PathWritable dictionaryPath;
+        private PathCountsWritable posPaths;
+        private PathCountsWritable wordsPaths;
+        private MultipleOutputs<Text, Text> multipleOutputs;
+        private boolean splitOutputs;
+        private IntermediateCompression compression;
+        private CountMinSketch pathSketch;
+        private HypernymFilter hypernymFilter;
+        private HyperLogLog pairSketch;
+        private long validationThreshold;
+        private SkewMitigation skewMitigation;
+        private int reportThreshold;
+        private PairPruning pairPruning;
+        private HypernymFilter labeledPairs;
 
         /**
          * Setup up a Reducer node.
@@ -215,24 +399,55 @@ public class Step1 {
          * @param context the Map-Reduce job context.
          */
         @Override
-        public void setup(Context context) {
-            DPmin = Integer.parseInt(context.getConfiguration().get("DPMIN"));
+        public void setup(Context context) throws IOException {
+            // With a list of thresholds, the paths of the smallest one are kept with their exact number of pairs
+            DPmin = FeatureDictionary.getThresholds(context.getConfiguration())[0];
+            exactCounts = !context.getConfiguration().get(FeatureDictionary.DPMIN_LIST, "").trim().isEmpty();
+            countMap = new HashMap<>();
+            lastNounPair = new NounPairWritable();
+            dictionaryPath = new PathWritable();
+            posPaths = new PathCountsWritable();
+            wordsPaths = new PathCountsWritable();
+            multipleOutputs = new MultipleOutputs<>(context);
+            splitOutputs = context.getConfiguration().getBoolean(SPLIT_OUTPUTS, false);
+            compression = new IntermediateCompression(FeatureDictionary.NAMED_OUTPUT, PAIRS_OUTPUT, SkewMitigation.PARTIAL_OUTPUT);
+            if (context.getConfiguration().getBoolean(FeatureHashing.FEATURE_HASHING, false)) {
+                pathSketch = new CountMinSketch(context.getConfiguration().getInt(FeatureHashing.PATH_SKETCH_DEPTH, FeatureHashing.DEFAULT_PATH_SKETCH_DEPTH),
+                        context.getConfiguration().getInt(FeatureHashing.PATH_SKETCH_WIDTH, FeatureHashing.DEFAULT_PATH_SKETCH_WIDTH));
+                if (context.getConfiguration().getBoolean(HypernymFilter.HYPERNYM_FILTER, false))
+                    hypernymFilter = HypernymFilter.readFromCache();
+            }
+            if (context.getConfiguration().getBoolean(PathPairSketches.HLL_DPMIN, false) && pathSketch == null) {
+                pairSketch = new HyperLogLog(PathPairSketches.getPrecision(context.getConfiguration()));
+                validationThreshold = PathPairSketches.getValidationThreshold(context.getConfiguration());
+            }
+            if (!context.getConfiguration().get(SkewMitigation.SKEW_SELECTED_KEYS, "").isEmpty())
+                skewMitigation = new SkewMitigation(context.getConfiguration());
+            reportThreshold = context.getConfiguration().getInt(SkewMitigation.SKEW_REPORT_THRESHOLD, 0);
+            // The pairs of the hypernym list are told by the hypernym filter, and kept however rare they are
+            if (PairPruning.isEnabled(context.getConfiguration())) {
+                pairPruning = new PairPruning(context.getConfiguration());
+                if (PairPruning.needsHypernymFilter(context.getConfiguration()))
+                    labeledPairs = HypernymFilter.readFromCache();
+            }
             System.out.println("Reducer: DPmin is set to " + DPmin);
         }
 
         /**
          * Input:
          * key - <N1 N2>  value - [Dependency_path_1 1, Dependency_path_1 1 , Dependency_path_2 1, ... ]
-         * key - Dependency_path_1 (NN:VB:IT:NN)  value - [<N1 N2> , <N1,N2> , <N2,N3>]
+         * key - Dependency_path_1 (NN:VB:IT:NN) , <N1 N2>  value - [(empty), (empty), ...] the pairs of the path, sorted
          * <p>
          * Output:
-         * key - **  value - Dependency_path_1 (If D >= DPmin)
+         * key - **  value - Dependency_path_1 (If D >= DPmin), also written to the dictionary side output with D
          * key - <N1 N2>  value - < Dependency_path_1: 3, Dependency_path_2 : 7  , ... >
+         * With split outputs, the paths are only written to the dictionary side output and the pairs to the pairs
+         * side output, as the PathWritables and NounPairWritables of the keys, so the paths keep their packed form.
          */
         @Override
-        public void reduce(Text key, Iterable<Text> values, Context context) throws IOException, InterruptedException {
+        public void reduce(Step1Key key, Iterable<Step1Value> values, Context context) throws IOException, InterruptedException {
             //  key - <N1 N2>
-            if (key.toString().split("\\$").length > 1) {
+            if (key.isNounPair()) {
                 countDependencyPaths(key, values, context);
             }
             // key - Dependency_path
@@ -243,8 +458,18 @@ public class Step1 {
         }
 
         /**
-         * Determines if the number of unique noun pairs in the given values meets the minimum requirement (DPmin).
-         * If the requirement is met, the key is written to the Reducer context.
+         * Determines if the number of unique noun pairs of a path meets the minimum requirement (DPmin). The pairs
+         * arrive sorted in the key as the values are read, so counting them only compares each pair with the last one.
+         * If the requirement is met, the path is written to the Reducer context and to the dictionary side output, with
+         * its number of pairs. The pairs are only counted up to DPmin, unless they are counted exactly for a list of
+         * DPmin thresholds.
+         * <p>
+         * In the HyperLogLog mode, the sketches of the path come first, as their noun pair is empty, and the
+         * requirement is checked against the estimate of their merge. The pairs of a sampled path follow, and are all
+         * counted to report the estimate against the exact count.
+         * <p>
+         * The pairs of a salted path are only a part of its pairs, so their count is written to the partial side
+         * output, for the driver to sum it with the other parts.
          *
          * @param key     the key
          * @param values  the values
@@ -252,32 +477,144 @@ public class Step1 {
          * @throws IOException          if an I/O error occurs
          * @throws InterruptedException if the operation is interrupted
          */
-        private void checkDPminCondition(Text key, Iterable<Text> values, Reducer<Text, Text, Text, Text>.Context context) throws IOException, InterruptedException {
-            // Initialize a variable to store the last noun pair encountered
-            String lastNounPairs = null;
+        private void checkDPminCondition(Step1Key key, Iterable<Step1Value> values, Context context) throws IOException, InterruptedException {
             // Initialize a counter for the number of unique noun pairs
             int uniqueNounPairs = 0;
-            // Iterate over the values
-            for (Text nounPair : values) {
+            boolean sketched = false;
+            boolean salted = skewMitigation != null && skewMitigation.isSalted(key);
+            // The records of the heavy keys are all counted, for their counters and reports
+            boolean countRecords = salted || reportThreshold > 0;
+            long records = 0;
+            // Iterate over the values, the key holding the noun pair of each one
+            for (Step1Value value : values) {
+                records++;
+                // Merge the sketches of the path
+                if (value.isSketch()) {
+                    if (sketched)
+                        pairSketch.merge(value.getSketch());
+                    else
+                        pairSketch.set(value.getSketch());
+                    sketched = true;
+                    continue;
+                }
                 // If the current noun pair is different from the last one encountered
-                if (!nounPair.toString().equals(lastNounPairs)) {
+                if (uniqueNounPairs == 0 || !key.getNounPair().equals(lastNounPair)) {
                     // Update the last noun pair encountered
-                    lastNounPairs = nounPair.toString();
+                    lastNounPair.set(key.getNounPair());
                     // Increment the counter
                     uniqueNounPairs++;
                 }
                 // If the number of unique noun pairs meets the minimum requirement, exit the loop
-                if (uniqueNounPairs == DPmin) break;
+                if (uniqueNounPairs == DPmin && !sketched && !countRecords && !exactCounts) break;
+            }
+            reportHeavyKey(SkewMitigation.PATH, key, records, salted, context);
+            if (salted) {
+                writePartial(SkewMitigation.PATH, key.toString(), Integer.toString(uniqueNounPairs));
+                return;
+            }
+            long nounPairs = uniqueNounPairs;
+            if (sketched) {
+                nounPairs = pairSketch.estimate();
+                if (PathPairSketches.isSampled(key.getPath(), validationThreshold))
+                    validate(key, nounPairs, uniqueNounPairs, context);
             }
             // If the number of unique noun pairs meets the minimum requirement
-            if (uniqueNounPairs >= DPmin) {
-                // Write the key to the Reducer context
-                context.write(new Text("**"), key);
+            if (nounPairs >= DPmin) {
+                // Write the path to the Reducer context and to the feature dictionary of Step2, or to the outputs of
+                // the words space without its tag
+                boolean wordsPath = FeatureSpaces.isWordsPath(key.getPath());
+                if (wordsPath)
+                    FeatureSpaces.untag(key.getPath(), dictionaryPath);
+                else
+                    dictionaryPath.set(key.getPath());
+                String directory = FeatureSpaces.getDirectory(wordsPath ? FeatureSpaces.WORDS : FeatureSpaces.POS);
+                if (!splitOutputs) {
+                    Text path = new Text(dictionaryPath.toString());
+                    if (wordsPath)
+                        multipleOutputs.write(new Text("**"), path, directory + "part");
+                    else
+                        context.write(new Text("**"), path);
+                }
+                LongWritable count = new LongWritable(nounPairs);
+                multipleOutputs.write(FeatureDictionary.NAMED_OUTPUT, dictionaryPath, count, directory + FeatureDictionary.NAMED_OUTPUT);
+                compression.countRecord(dictionaryPath, count);
+            }
+        }
+
+        /**
+         * Counts the records of a salted key, and reports the key to the heavy side output if it has at least
+         * SKEW_REPORT_THRESHOLD records.
+         *
+         * @param kind    the kind of the key, a path or a noun pair.
+         * @param key     the key.
+         * @param records the number of records of the key reduced by this reducer.
+         * @param salted  true if the key is salted.
+         * @param context the Reducer context
+         * @throws IOException          if an I/O error occurs
+         * @throws InterruptedException if the operation is interrupted
+         */
+        private void reportHeavyKey(String kind, Step1Key key, long records, boolean salted, Context context) throws IOException, InterruptedException {
+            if (salted) {
+                context.getCounter(SkewMitigation.HEAVY_KEY_RECORDS, kind + " " + key).increment(records);
+                context.getCounter(SkewMitigation.SkewCounter.SALTED_GROUPS).increment(1);
             }
+            if (reportThreshold > 0 && records >= reportThreshold) {
+                multipleOutputs.write(SkewMitigation.HEAVY_OUTPUT, new Text(kind), new Text(key + "\t" + records));
+                context.getCounter(SkewMitigation.SkewCounter.HEAVY_KEYS_REPORTED).increment(1);
+            }
+        }
+
+        /**
+         * Writes the partial result of a salted key to the partial side output.
+         *
+         * @param kind   the kind of the key, a path or a noun pair.
+         * @param key    the key, tagged like the paths of the words space for the paths of a pair in that space.
+         * @param result the result of the part of the key reduced by this reducer.
+         * @throws IOException          if an I/O error occurs
+         * @throws InterruptedException if the operation is interrupted
+         */
+        private void writePartial(String kind, String key, String result) throws IOException, InterruptedException {
+            Text partialKey = new Text(kind + "\t" + key);
+            Text partialResult = new Text(result);
+            multipleOutputs.write(SkewMitigation.PARTIAL_OUTPUT, partialKey, partialResult);
+            compression.countRecord(partialKey, partialResult);
         }
 
         /**
-         * Counts the occurrences of each dependency path in the given values.
+         * Reports the estimated number of noun pairs of a sampled path against the exact number, to the validation
+         * side output and to the counters.
+         *
+         * @param key      the key of the path.
+         * @param estimate the estimated number of noun pairs of the path.
+         * @param exact    the exact number of noun pairs of the path.
+         * @param context  the Reducer context
+         * @throws IOException          if an I/O error occurs
+         * @throws InterruptedException if the operation is interrupted
+         */
+        private void validate(Step1Key key, long estimate, int exact, Context context) throws IOException, InterruptedException {
+            multipleOutputs.write(PathPairSketches.VALIDATION_OUTPUT, new Text(key.toString()), new Text(estimate + "\t" + exact));
+            context.getCounter(PathPairSketches.PathPairSketchCounter.HLL_VALIDATED_PATHS).increment(1);
+            context.getCounter(PathPairSketches.PathPairSketchCounter.HLL_VALIDATION_EXACT_PAIRS).increment(exact);
+            context.getCounter(PathPairSketches.PathPairSketchCounter.HLL_VALIDATION_ABSOLUTE_ERROR).increment(Math.abs(estimate - exact));
+            if (estimate >= DPmin != exact >= DPmin)
+                context.getCounter(PathPairSketches.PathPairSketchCounter.HLL_VALIDATION_WRONG_DECISIONS).increment(1);
+        }
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            if (pathSketch != null)
+                multipleOutputs.write(FeatureHashing.NAMED_OUTPUT, NullWritable.get(), pathSketch);
+            multipleOutputs.close();
+            compression.reportCounters(context);
+            if (hypernymFilter != null) {
+                context.getCounter(HypernymFilter.HypernymFilterCounter.HYPERNYM_FILTER_KEPT_PAIRS).increment(hypernymFilter.getKept());
+                context.getCounter(HypernymFilter.HypernymFilterCounter.HYPERNYM_FILTER_DROPPED_PAIRS).increment(hypernymFilter.getDropped());
+            }
+        }
+
+        /**
+         * Counts the occurrences of each dependency path in the given values. The paths of each feature space are
+         * written apart, unless the pair is too rare in the space to be kept.
          *
          * @param key     the key
          * @param values  the values
@@ -285,25 +622,196 @@ public class Step1 {
          * @throws IOException          if an I/O error occurs
          * @throws InterruptedException if the operation is interrupted
          */
-        private void countDependencyPaths(Text key, Iterable<Text> values, Reducer<Text, Text, Text, Text>.Context context) throws IOException, InterruptedException {
-            //Initialize countMap to count how many unique dependency paths we have
-            HashMap<String, Integer> countMap = new HashMap<>();
-            // Iterate over the values
-            for (Text value : values) {
-                String[] dependencyPathProp = value.toString().split("\\$");
-                String dependencyPathString = dependencyPathProp[0];
-                String dependencyPathOccurrences = dependencyPathProp[1];
-                if (!countMap.containsKey(dependencyPathString))
-                    countMap.put(dependencyPathString, Integer.parseInt(dependencyPathOccurrences));
-                else {
-                    int count = countMap.get(dependencyPathString);
-                    countMap.put(dependencyPathString, count + Integer.parseInt(dependencyPathOccurrences));
+        private void countDependencyPaths(Step1Key key, Iterable<Step1Value> values, Context context) throws IOException, InterruptedException {
+            //Count how many times each unique dependency path was found
+            int records = countPaths(values, countMap);
+            boolean salted = skewMitigation != null && skewMitigation.isSalted(key);
+            reportHeavyKey(SkewMitigation.PAIR, key, records, salted, context);
+            // With feature hashing, the pair counts once for every distinct path in the sketch, and is only written
+            // if it may be labeled
+            if (pathSketch != null) {
+                for (PathWritable path : countMap.keySet())
+                    pathSketch.add(FeatureHashing.hash(path), 1);
+                if (hypernymFilter != null && !hypernymFilter.mightContain(key.getNounPair()))
+                    return;
+            }
+            posPaths.clear();
+            wordsPaths.clear();
+            long posOccurrences = 0;
+            long wordsOccurrences = 0;
+            for (Map.Entry<PathWritable, long[]> entry : countMap.entrySet()) {
+                long occurrences = entry.getValue()[0];
+                PathCountWritable pathCount;
+                if (FeatureSpaces.isWordsPath(entry.getKey())) {
+                    pathCount = wordsPaths.add();
+                    FeatureSpaces.untag(entry.getKey(), pathCount.getPath());
+                    wordsOccurrences += occurrences;
+                } else {
+                    pathCount = posPaths.add();
+                    pathCount.getPath().set(entry.getKey());
+                    posOccurrences += occurrences;
                 }
+                pathCount.setCount(occurrences);
             }
-            String res = countMap.entrySet().stream().map(entry -> entry.getKey() + DELIMITER_1 + entry.getValue() + DELIMITER_2).collect(Collectors.joining());
-            // Write the results to the Reducer context
-            context.write(key, new Text(res));
+            if (posPaths.size() > 0 && !prune(key, posOccurrences, posPaths, salted, context))
+                writePairPaths(key, posPaths, FeatureSpaces.POS, salted, context);
+            if (wordsPaths.size() > 0 && !prune(key, wordsOccurrences, wordsPaths, salted, context))
+                writePairPaths(key, wordsPaths, FeatureSpaces.WORDS, salted, context);
         }
+
+        /**
+         * Determines if the paths of a noun pair in a feature space are pruned, and counts them if they are. The pair
+         * is pruned if it is rare in the space, unless it is salted or may be in the hypernym list.
+         *
+         * @param key         the key of the noun pair.
+         * @param occurrences the occurrences of the pair in the space.
+         * @param paths       the paths of the pair in the space and their occurrences.
+         * @param salted      true if the pair is salted.
+         * @param context     the Reducer context
+         * @return true if the paths are not written.
+         */
+        private boolean prune(Step1Key key, long occurrences, PathCountsWritable paths, boolean salted, Context context) {
+            if (pairPruning == null || salted || !pairPruning.isRare(occurrences, paths.size()))
+                return false;
+            if (labeledPairs != null && labeledPairs.mightContain(key.getNounPair())) {
+                context.getCounter(PairPruning.PairPruningCounter.LABELED_PAIRS_KEPT).increment(1);
+                return false;
+            }
+            context.getCounter(PairPruning.PairPruningCounter.PRUNED_PAIRS).increment(1);
+            context.getCounter(PairPruning.PairPruningCounter.PRUNED_PAIR_PATHS).increment(paths.size());
+            context.getCounter(PairPruning.PairPruningCounter.PRUNED_PAIR_OCCURRENCES).increment(occurrences);
+            context.getCounter(PairPruning.PairPruningCounter.PRUNED_PAIR_BYTES).increment(key.getNounPair().getSerializedLength() + paths.getSerializedLength());
+            return true;
+        }
+
+        /**
+         * Writes the paths of a noun pair in a feature space. The pairs side output gets the pair and the paths as
+         * they are, and the other outputs get their text.
+         *
+         * @param key     the key of the noun pair.
+         * @param paths   the paths of the pair in the space and their occurrences.
+         * @param space   the feature space of the paths.
+         * @param salted  true if the pair is salted.
+         * @param context the Reducer context
+         * @throws IOException          if an I/O error occurs
+         * @throws InterruptedException if the operation is interrupted
+         */
+        private void writePairPaths(Step1Key key, PathCountsWritable paths, String space, boolean salted, Context context) throws IOException, InterruptedException {
+            boolean words = FeatureSpaces.WORDS.equals(space);
+            // The paths of a salted pair are only a part of its paths, merged with the other parts by the driver
+            if (salted) {
+                writePartial(SkewMitigation.PAIR, words ? FeatureSpaces.WORDS_PATH_TAG + key.toString() : key.toString(), paths.toString());
+                return;
+            }
+            // Write the results to the pairs side output, or to the Reducer context, under the directory of the space
+            if (splitOutputs) {
+                multipleOutputs.write(PAIRS_OUTPUT, key.getNounPair(), paths, FeatureSpaces.getDirectory(space) + PAIRS_OUTPUT);
+                compression.countRecord(key.getNounPair(), paths);
+            } else if (words)
+                multipleOutputs.write(new Text(key.toString()), new Text(paths.toString()), FeatureSpaces.getDirectory(space) + "part");
+            else
+                context.write(new Text(key.toString()), new Text(paths.toString()));
+        }
+    }
+
+    /**
+     * Builds the hypernym filter from the hypernym list in S3 and adds it to the distributed cache of the job.
+     *
+     * @param job the job of this step.
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static void addHypernymFilter(Job job) throws IOException, URISyntaxException {
+        Configuration conf = job.getConfiguration();
+        AmazonS3 s3 = AmazonS3ClientBuilder.standard().withRegion(Regions.US_EAST_1).build();
+        S3Object object = s3.getObject(new GetObjectRequest(Mapper1.BUCKET_NAME, HYPERNYM_TXT_PATH));
+        BloomFilter filter;
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(object.getObjectContent()))) {
+            StemCache stemCache = new StemCache(Stemmer.forCurrentThread(), conf.getInt(StemCache.STEM_CACHE_SIZE, StemCache.DEFAULT_STEM_CACHE_SIZE));
+            filter = HypernymFilter.build(br, stemCache, conf.getDouble(HypernymFilter.HYPERNYM_FILTER_FP_RATE, HypernymFilter.DEFAULT_HYPERNYM_FILTER_FP_RATE));
+        }
+        Path filterPath = new Path("s3://" + Mapper1.BUCKET_NAME + "/" + HypernymFilter.CACHE_FILE_NAME);
+        HypernymFilter.write(filter, filterPath, conf);
+        job.addCacheFile(new URI(filterPath.toUri() + "#" + HypernymFilter.CACHE_FILE_NAME));
+    }
+
+    /**
+     * Sets the default configuration of this step, the one shared with Step2 being set by Pipeline.
+     *
+     * @param conf the configuration of the job.
+     */
+    public static void setDefaults(Configuration conf) {
+        conf.set(PATH_EXTRACTOR, "subtree");
+        conf.setInt(MAX_PATH_LENGTH, 0);
+        conf.setBoolean(PathPairAggregator.IN_MAPPER_COMBINING, true);
+        conf.setInt(PathPairAggregator.IN_MAPPER_BUDGET_MB, PathPairAggregator.DEFAULT_IN_MAPPER_BUDGET_MB);
+        conf.setBoolean(HypernymFilter.HYPERNYM_FILTER, true);
+        conf.setDouble(HypernymFilter.HYPERNYM_FILTER_FP_RATE, HypernymFilter.DEFAULT_HYPERNYM_FILTER_FP_RATE);
+        conf.setBoolean(PathPairSketches.HLL_DPMIN, false);
+        conf.setDouble(PathPairSketches.HLL_RELATIVE_ERROR, PathPairSketches.DEFAULT_HLL_RELATIVE_ERROR);
+        conf.setDouble(PathPairSketches.HLL_VALIDATION_RATE, PathPairSketches.DEFAULT_HLL_VALIDATION_RATE);
+        conf.setInt(SkewMitigation.SKEW_SALTS, SkewMitigation.DEFAULT_SKEW_SALTS);
+        conf.setInt(SkewMitigation.SKEW_MAX_HEAVY_KEYS, SkewMitigation.DEFAULT_SKEW_MAX_HEAVY_KEYS);
+        conf.setInt(SkewMitigation.SKEW_REPORT_THRESHOLD, 0);
+        conf.setInt(MAPPER_THREADS, 1);
+        conf.setInt(PathTemplateCache.PATH_TEMPLATE_CACHE_SIZE, PathTemplateCache.DEFAULT_PATH_TEMPLATE_CACHE_SIZE);
+        conf.setLong(PairPruning.MIN_PAIR_OCCURRENCES, 1);
+        conf.setInt(PairPruning.MIN_PAIR_PATHS, 1);
+    }
+
+    /**
+     * Creates the job of this step.
+     *
+     * @param conf   the configuration of the job.
+     * @param input  the input of the job, the biarcs of the corpus.
+     * @param output the output directory of the job, read by Step2.
+     * @return the job.
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public static Job createJob(Configuration conf, Path input, Path output) throws IOException, URISyntaxException {
+        // Checked before the hypernym filter is built and uploaded
+        if (conf.getBoolean(FeatureHashing.FEATURE_HASHING, false) && FeatureSpaces.getSpaces(conf).contains(FeatureSpaces.WORDS))
+            throw new IllegalArgumentException("The words feature space needs the feature dictionary, not " + FeatureHashing.FEATURE_HASHING);
+        Job job = Job.getInstance(conf, "Step1");
+        if (conf.getBoolean(HypernymFilter.HYPERNYM_FILTER, false) || PairPruning.needsHypernymFilter(conf))
+            addHypernymFilter(job);
+        // Mapper1 only writes the pairs that may be labeled, and these are all kept
+        if (conf.getBoolean(HypernymFilter.HYPERNYM_FILTER, false) && PairPruning.needsHypernymFilter(conf))
+            System.out.println("[WARN] " + PairPruning.MIN_PAIR_OCCURRENCES + " and " + PairPruning.MIN_PAIR_PATHS + " prune no pair with "
+                    + HypernymFilter.HYPERNYM_FILTER + " unless " + PairPruning.PRUNE_LABELED_PAIRS + " is set");
+        job.setJarByClass(Step1.class);
+        int mapperThreads = conf.getInt(MAPPER_THREADS, 1);
+        if (mapperThreads > 1) {
+            job.setMapperClass(MultithreadedMapper.class);
+            MultithreadedMapper.setMapperClass(job, Mapper1.class);
+            MultithreadedMapper.setNumberOfThreads(job, mapperThreads);
+        } else
+            job.setMapperClass(Mapper1.class);
+        job.setCombinerClass(Combiner.class);
+        job.setReducerClass(Reducer1.class);
+        job.setPartitionerClass(PathPartitioner.class);
+        job.setGroupingComparatorClass(Step1Key.GroupingComparator.class);
+        job.setMapOutputKeyClass(Step1Key.class);
+        job.setMapOutputValueClass(Step1Value.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        job.setInputFormatClass(TextInputFormat.class);
+        IntermediateCompression.configureOutput(job);
+        MultipleOutputs.addNamedOutput(job, FeatureDictionary.NAMED_OUTPUT, SequenceFileOutputFormat.class, PathWritable.class, LongWritable.class);
+        if (conf.getBoolean(FeatureHashing.FEATURE_HASHING, false))
+            MultipleOutputs.addNamedOutput(job, FeatureHashing.NAMED_OUTPUT, SequenceFileOutputFormat.class, NullWritable.class, CountMinSketch.class);
+        else if (conf.getBoolean(PathPairSketches.HLL_DPMIN, false))
+            MultipleOutputs.addNamedOutput(job, PathPairSketches.VALIDATION_OUTPUT, TextOutputFormat.class, Text.class, Text.class);
+        if (conf.getBoolean(SPLIT_OUTPUTS, false)) {
+            MultipleOutputs.addNamedOutput(job, PAIRS_OUTPUT, SequenceFileOutputFormat.class, NounPairWritable.class, PathCountsWritable.class);
+            // Nothing is written to the regular output, whose empty files are not created
+            LazyOutputFormat.setOutputFormatClass(job, TextOutputFormat.class);
+        }
+        SkewMitigation.configure(job);
+        FileInputFormat.addInputPath(job, input);
+        FileOutputFormat.setOutputPath(job, output);
+        return job;
     }
 
     /**
@@ -317,19 +825,14 @@ public class Step1 {
         System.out.println("[DEBUG] STEP 1 started!");
         System.out.println(args.length > 0 ? args[0] : "no args");
         Configuration conf = new Configuration();
-        conf.set("DPMIN", "3");
-        Job job = Job.getInstance(conf, "Step1");
-        job.setJarByClass(Step1.class);
-        job.setMapperClass(Mapper1.class);
-        job.setCombinerClass(Combiner.class);
-        job.setReducerClass(Reducer1.class);
-        job.setOutputKeyClass(Text.class);
-        job.setOutputValueClass(Text.class);
-        job.setInputFormatClass(TextInputFormat.class);
-        FileInputFormat.addInputPath(job, new Path("s3://bucket1638974297772/input/"));
-//        FileInputFormat.addInputPath(job, new Path("s3://bucket1638974297772/inputIdan.txt"));
-        FileOutputFormat.setOutputPath(job, new Path("s3://bucket1638974297772/output1"));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        Pipeline.setSharedDefaults(conf);
+        setDefaults(conf);
+        Job job = createJob(conf, new Path("s3://bucket1638974297772/input/"), new Path("s3://bucket1638974297772/output1"));
+//        Job job = createJob(conf, new Path("s3://bucket1638974297772/inputIdan.txt"), new Path("s3://bucket1638974297772/output1"));
+        if (!job.waitForCompletion(true))
+            System.exit(1);
+        SkewMitigation.mergePartials(job);
+        System.exit(0);
 
     }
 
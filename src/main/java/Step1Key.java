@@ -0,0 +1,214 @@
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The intermediate key of Step1: either a noun pair, or a dependency path together with a noun pair it connects.
+ * <p>
+ * The kind of the key (text path, packed path or noun pair) is kept in the two lowest bits of the vint length that
+ * precedes the bytes of the path or the pair. A path key is followed by its pair, as a vint length and the bytes of
+ * the pair. Keys sort by their kind first, so all the paths come before all the noun pairs, then by their path and
+ * then by their pair, and the raw Comparator sorts them without deserializing.
+ * <p>
+ * Path keys are grouped and partitioned by their path only (secondary sort): the reduce of a path sees all the noun
+ * pairs of the path, sorted, as the key changes while the values are read.
+ */
+public class Step1Key implements WritableComparable<Step1Key> {
+
+    private static final int PACKED_PATH = 0;
+    private static final int PATH = 1;
+    private static final int NOUN_PAIR = 2;
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private int type;
+    private final PathWritable path;
+    private final NounPairWritable nounPair;
+
+    public Step1Key() {
+        path = new PathWritable();
+        nounPair = new NounPairWritable();
+    }
+
+    /**
+     * Makes this key a dependency path key. The noun pair of the key is to be set as well, with getNounPair().
+     *
+     * @return the path of the key, to be set by the caller.
+     */
+    public PathWritable setPath() {
+        type = PATH;
+        return path;
+    }
+
+    /**
+     * Makes this key a noun pair key.
+     *
+     * @return the pair of the key, to be set by the caller.
+     */
+    public NounPairWritable setNounPair() {
+        type = NOUN_PAIR;
+        return nounPair;
+    }
+
+    public boolean isNounPair() {
+        return type == NOUN_PAIR;
+    }
+
+    public PathWritable getPath() {
+        return path;
+    }
+
+    /**
+     * @return the pair of a noun pair key, or the pair connected by the path of a path key.
+     */
+    public NounPairWritable getNounPair() {
+        return nounPair;
+    }
+
+    private int getKind() {
+        return type == PATH && path.isPacked() ? PACKED_PATH : type;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        if (type == NOUN_PAIR) {
+            WritableUtils.writeVInt(out, nounPair.getLength() << KIND_BITS | NOUN_PAIR);
+            out.write(nounPair.getBytes(), 0, nounPair.getLength());
+        } else {
+            WritableUtils.writeVInt(out, path.getLength() << KIND_BITS | getKind());
+            out.write(path.getBytes(), 0, path.getLength());
+            nounPair.write(out);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int header = WritableUtils.readVInt(in);
+        int kind = header & KIND_MASK;
+        if (kind == NOUN_PAIR) {
+            type = NOUN_PAIR;
+            nounPair.readBytes(in, header >>> KIND_BITS);
+        } else {
+            type = PATH;
+            path.readBytes(in, header >>> KIND_BITS, kind == PACKED_PATH);
+            nounPair.readFields(in);
+        }
+    }
+
+    @Override
+    public int compareTo(Step1Key other) {
+        int compare = compareGroups(other);
+        if (compare != 0 || type == NOUN_PAIR)
+            return compare;
+        return nounPair.compareTo(other.nounPair);
+    }
+
+    /**
+     * Compares the groups of two keys: their kind, and their path or their pair.
+     */
+    private int compareGroups(Step1Key other) {
+        if (getKind() != other.getKind())
+            return getKind() - other.getKind();
+        return type == NOUN_PAIR ? nounPair.compareTo(other.nounPair) : path.compareTo(other.path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Step1Key && compareTo((Step1Key) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return type == NOUN_PAIR ? nounPair.hashCode() : path.hashCode() * 31 + nounPair.hashCode();
+    }
+
+    /**
+     * @return the hash code of the group of the key, equal for all the keys of a path.
+     */
+    public int groupHashCode() {
+        return type == NOUN_PAIR ? nounPair.hashCode() : path.hashCode();
+    }
+
+    /**
+     * @return the path of a path key, or the pair of a noun pair key.
+     */
+    @Override
+    public String toString() {
+        return type == NOUN_PAIR ? nounPair.toString() : path.toString();
+    }
+
+    /**
+     * The raw comparator of Step1Key.
+     */
+    public static class Comparator extends WritableComparator {
+
+        public Comparator() {
+            super(Step1Key.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return compareSerialized(b1, s1, l1, b2, s2, l2, false);
+        }
+    }
+
+    /**
+     * The grouping comparator of Step1Key, which ignores the pair of a path key.
+     */
+    public static class GroupingComparator extends WritableComparator {
+
+        public GroupingComparator() {
+            super(Step1Key.class);
+        }
+
+        @Override
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            return compareSerialized(b1, s1, l1, b2, s2, l2, true);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            return ((Step1Key) a).compareGroups((Step1Key) b);
+        }
+    }
+
+    private static int compareSerialized(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2, boolean groupsOnly) {
+        int header1;
+        int header2;
+        try {
+            header1 = WritableComparator.readVInt(b1, s1);
+            header2 = WritableComparator.readVInt(b2, s2);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        int kind1 = header1 & KIND_MASK;
+        int kind2 = header2 & KIND_MASK;
+        if (kind1 != kind2)
+            return kind1 - kind2;
+        int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+        int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+        if (kind1 == NOUN_PAIR)
+            return WritableComparator.compareBytes(b1, s1 + n1, l1 - n1, b2, s2 + n2, l2 - n2);
+
+        int pathLength1 = header1 >>> KIND_BITS;
+        int pathLength2 = header2 >>> KIND_BITS;
+        int compare = WritableComparator.compareBytes(b1, s1 + n1, pathLength1, b2, s2 + n2, pathLength2);
+        if (compare != 0 || groupsOnly)
+            return compare;
+        // Both pairs are serialized as a vint length followed by their bytes
+        int pair1 = s1 + n1 + pathLength1;
+        int pair2 = s2 + n2 + pathLength2;
+        int m1 = WritableUtils.decodeVIntSize(b1[pair1]);
+        int m2 = WritableUtils.decodeVIntSize(b2[pair2]);
+        return WritableComparator.compareBytes(b1, pair1 + m1, s1 + l1 - pair1 - m1, b2, pair2 + m2, s2 + l2 - pair2 - m2);
+    }
+
+    static {
+        WritableComparator.define(Step1Key.class, new Comparator());
+    }
+}
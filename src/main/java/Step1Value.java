@@ -0,0 +1,111 @@
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The intermediate value of Step1: a path with its count when the key is a noun pair, or nothing when the key is a
+ * dependency path, as the noun pair of the path is part of the key. Like in Step1Key, the kind of the value (empty,
+ * text path count or packed path count) is kept in the two lowest bits of a vint, followed for a path count by the
+ * length of the path, the bytes of the path and the count as a vlong. An empty value is a single byte.
+ * <p>
+ * In the HyperLogLog mode of the DPmin condition, the value of a path key with an empty noun pair is the sketch of the
+ * noun pairs of the path, of kind 3, serialized after its header.
+ */
+public class Step1Value implements Writable {
+
+    private static final int EMPTY = 0;
+    private static final int PATH_COUNT = 1;
+    private static final int PACKED_PATH_COUNT = 2;
+    private static final int SKETCH = 3;
+    private static final int KIND_BITS = 2;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+    private int type;
+    private final PathCountWritable pathCount;
+    private HyperLogLog sketch;
+
+    public Step1Value() {
+        pathCount = new PathCountWritable();
+    }
+
+    /**
+     * Makes this value the empty value of a path key.
+     */
+    public void setEmpty() {
+        type = EMPTY;
+    }
+
+    /**
+     * Makes this value a path count value.
+     *
+     * @return the path count of the value, to be set by the caller.
+     */
+    public PathCountWritable setPathCount() {
+        type = PATH_COUNT;
+        return pathCount;
+    }
+
+    public PathCountWritable getPathCount() {
+        return pathCount;
+    }
+
+    /**
+     * Makes this value a sketch value.
+     *
+     * @return the sketch of the value, to be set by the caller.
+     */
+    public HyperLogLog setSketch() {
+        type = SKETCH;
+        if (sketch == null)
+            sketch = new HyperLogLog();
+        return sketch;
+    }
+
+    public HyperLogLog getSketch() {
+        return sketch;
+    }
+
+    public boolean isSketch() {
+        return type == SKETCH;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        if (type == EMPTY) {
+            WritableUtils.writeVInt(out, EMPTY);
+        } else if (type == SKETCH) {
+            WritableUtils.writeVInt(out, SKETCH);
+            sketch.write(out);
+        } else {
+            PathWritable path = pathCount.getPath();
+            WritableUtils.writeVInt(out, path.getLength() << KIND_BITS | (path.isPacked() ? PACKED_PATH_COUNT : PATH_COUNT));
+            out.write(path.getBytes(), 0, path.getLength());
+            WritableUtils.writeVLong(out, pathCount.getCount());
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        int header = WritableUtils.readVInt(in);
+        int kind = header & KIND_MASK;
+        if (kind == EMPTY) {
+            type = EMPTY;
+        } else if (kind == SKETCH) {
+            setSketch().readFields(in);
+        } else {
+            type = PATH_COUNT;
+            pathCount.getPath().readBytes(in, header >>> KIND_BITS, kind == PACKED_PATH_COUNT);
+            pathCount.setCount(WritableUtils.readVLong(in));
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (type == SKETCH)
+            return "~" + sketch.estimate();
+        return type == EMPTY ? "" : pathCount.toString();
+    }
+}
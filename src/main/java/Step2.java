@@ -9,19 +9,40 @@ import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.*;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 
 import java.io.*;
-import java.util.Arrays;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
 
 public class Step2 {
 
+    /**
+     * Configuration key of the sparse output of the features vectors.
+     */
+    public static final String SPARSE_VECTORS = "SPARSE_VECTORS";
+
     public static class Mapper2 extends Mapper<LongWritable, Text, Text, Text> {
 
+        private boolean dictionaryMode;
+
+        /**
+         * Setup the Mapper node.
+         *
+         * @param context the Map-Reduce job context.
+         */
+        @Override
+        public void setup(Context context) {
+            dictionaryMode = context.getConfiguration().getBoolean(FeatureDictionary.FEATURE_DICTIONARY, false)
+                    || context.getConfiguration().getBoolean(FeatureHashing.FEATURE_HASHING, false);
+        }
+
         /**
          * Input:
          * 1) Key = ** Value = DependencyPath
@@ -29,23 +50,77 @@ public class Step2 {
          * Output:
          * 1) Key = ** Value = DependencyPath
          * 2) Key = N1N2 \t Value = <DependencyPath Number of occurrences \t DependencyPath Number of occurrences \t ...>
+         * In dictionary mode the dependency paths come from the feature dictionary, and the ** records are dropped.
          */
         @Override
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
             String[] pairAndDependencyPaths = value.toString().split("\t");
+            if (dictionaryMode && pairAndDependencyPaths[0].equals("**"))
+                return;
             context.write(new Text(pairAndDependencyPaths[0]), new Text(pairAndDependencyPaths[1]));
         }
     }
 
 
+    /**
+     * The mapper of Step2 with the split outputs of Step1. Every noun pair of the pairs side output of Step1 is met
+     * once, with all its dependency paths, so its features vector is written by the mapper and Step2 has no reducers.
+     */
+    public static class VectorMapper extends Mapper<NounPairWritable, PathCountsWritable, Text, Text> {
+
+        private Text nounPair;
+        private HypernymIndex hypernymIndex;
+        private FeaturesVectorBuilder vectorBuilder;
+        private PairPruning pairPruning;
+
+        /**
+         * Setup the Mapper node.
+         *
+         * @param context the Map-Reduce job context.
+         */
+        @Override
+        public void setup(Context context) throws IOException {
+            nounPair = new Text();
+            hypernymIndex = HypernymIndex.mapFromCache();
+            vectorBuilder = createVectorBuilder(context.getConfiguration());
+            pairPruning = new PairPruning(context.getConfiguration());
+        }
+
+        /**
+         * Input:
+         * Key = N1N2 Value = [(DependencyPath, Number of occurrences), (DependencyPath, Number of occurrences), ...]
+         * Output:
+         * Key = N1N2 Value = the features vector and the label of the pair, if the pair is in the hypernym list and its
+         * vector is not pruned for being empty
+         */
+        @Override
+        public void map(NounPairWritable key, PathCountsWritable value, Context context) throws IOException, InterruptedException {
+            Boolean label = hypernymIndex.getLabel(key);
+            if (label == null)
+                return;
+            vectorBuilder.add(value);
+            if (vectorBuilder.isEmpty() && pairPruning.dropEmptyVector(context)) {
+                vectorBuilder.clear();
+                return;
+            }
+            nounPair.set(key.getBytes(), 0, key.getLength());
+            context.write(nounPair, new Text(vectorBuilder.build(label)));
+        }
+    }
+
+
     public static class Reducer2 extends Reducer<Text, Text, Text, Text> {
 
         private Map<String, Long> dependencyPathsMap;
+        private FeaturesVectorBuilder vectorBuilder;
+        private boolean sparseVectors;
+        private PairPruning pairPruning;
 
         private HashMap<String, Boolean> hypernymMap;
+        private HypernymIndex hypernymIndex;
         public static final String BUCKET_NAME = "bucket1638974297772";
-        private final String HYPERNYM_LIST = "hypernym.txt";
-        private Stemmer stemmer;
+        private static final String HYPERNYM_LIST = "hypernym.txt";
+        private StemCache stemCache;
         private AmazonS3 s3;
 
         /**
@@ -56,8 +131,17 @@ public class Step2 {
          * @throws IOException If there is an error reading from S3
          */
         public void setup(Context context) throws IOException {
-            // Initialize the map that will store the dependency paths
-            dependencyPathsMap = new HashMap<>();
+            // Initialize the map that will store the dependency paths, sorted so the features keep the same order
+            dependencyPathsMap = new TreeMap<>();
+            sparseVectors = context.getConfiguration().getBoolean(SPARSE_VECTORS, false);
+            pairPruning = new PairPruning(context.getConfiguration());
+            setupFeatureDictionary(context);
+
+            // The hypernym index built by the driver is mapped instead of reading the hypernym list
+            if (context.getConfiguration().getBoolean(HypernymIndex.HYPERNYM_INDEX, false)) {
+                hypernymIndex = HypernymIndex.mapFromCache();
+                return;
+            }
 
             // Initialize an S3 client and set the region to US East (N. Virginia)
             s3 = AmazonS3ClientBuilder.standard().withRegion("us-east-1").build();
@@ -73,7 +157,7 @@ public class Step2 {
             hypernymMap = new HashMap<>();
 
             // Initialize a stemmer to normalize the words
-            stemmer = new Stemmer();
+            stemCache = new StemCache(Stemmer.forCurrentThread(), context.getConfiguration().getInt(StemCache.STEM_CACHE_SIZE, StemCache.DEFAULT_STEM_CACHE_SIZE));
 
             // Read each line of the file and add the hypernym information to the map
             String line;
@@ -81,12 +165,8 @@ public class Step2 {
                 String[] pieces = line.split("\\s");
 
                 // Stem the words
-                stemmer.add(pieces[0].toCharArray(), pieces[0].length());
-                stemmer.stem();
-                pieces[0] = stemmer.toString();
-                stemmer.add(pieces[1].toCharArray(), pieces[1].length());
-                stemmer.stem();
-                pieces[1] = stemmer.toString();
+                pieces[0] = stemCache.stem(pieces[0]);
+                pieces[1] = stemCache.stem(pieces[1]);
 
                 // Add the hypernym information to the map
                 hypernymMap.put(pieces[0] + "$" + pieces[1], pieces[2].equals("True"));
@@ -94,6 +174,20 @@ public class Step2 {
 
             // Close the BufferedReader
             br.close();
+            context.getCounter(StemCache.StemCacheCounter.STEM_CACHE_HITS).increment(stemCache.getHits());
+            context.getCounter(StemCache.StemCacheCounter.STEM_CACHE_MISSES).increment(stemCache.getMisses());
+        }
+
+        /**
+         * In dictionary mode, the features vector is indexed by the dictionary shipped with the job, and with feature
+         * hashing by the hash of the paths.
+         *
+         * @param context the Reducer context
+         */
+        private void setupFeatureDictionary(Context context) throws IOException {
+            if (context.getConfiguration().getBoolean(FeatureDictionary.FEATURE_DICTIONARY, false)
+                    || context.getConfiguration().getBoolean(FeatureHashing.FEATURE_HASHING, false))
+                vectorBuilder = createVectorBuilder(context.getConfiguration());
         }
 
         /**
@@ -107,6 +201,19 @@ public class Step2 {
             // Get the key as a string
             String strKey = key.toString();
 
+            if (vectorBuilder != null) {
+                Boolean label = getLabel(key);
+                if (label != null) {
+                    for (Text dependencyPathsAndOccurrences : values)
+                        vectorBuilder.add(dependencyPathsAndOccurrences);
+                    if (vectorBuilder.isEmpty() && pairPruning.dropEmptyVector(context))
+                        vectorBuilder.clear();
+                    else
+                        context.write(key, new Text(vectorBuilder.build(label)));
+                }
+                return;
+            }
+
             // If the key is "**", this is a list of all possible dependency paths
             if (strKey.equals("**")) {
                 // Add each dependency path to the map with a value of 0
@@ -115,7 +222,10 @@ public class Step2 {
                 }
             }
             // If the key is not "**", this is a list of dependency paths and their occurrences for a specific pair of words
-            else if(hypernymMap.containsKey(key.toString())){
+            else {
+                Boolean label = getLabel(key);
+                if (label == null)
+                    return;
                 // For each dependency path and its occurrences, update the value in the map
                 for (Text dependencyPathsAndOccurrences : values) {
                     String[] parts = dependencyPathsAndOccurrences.toString().split("@");  // [DependencyPath # Number of occurrences]
@@ -129,21 +239,37 @@ public class Step2 {
 
                 // Convert the map to a feature vector
                 long[] featuresVector = parseDepMapToFeaturesVector();
-
-                // Build the output string
-                StringBuilder sb = new StringBuilder();
-                for (long entry : featuresVector) {
-                    sb.append(entry).append(",");
+                int[] nonZeroIndexes = new int[featuresVector.length];
+                int numOfNonZero = 0;
+                for (int i = 0; i < featuresVector.length; i++) {
+                    if (featuresVector[i] != 0)
+                        nonZeroIndexes[numOfNonZero++] = i;
                 }
-                sb.append(hypernymMap.get(strKey));
 
-                // Write the output to the context
-                context.write(key, new Text(sb.toString()));
+                // Write the output to the context, unless the vector is pruned for being empty
+                if (numOfNonZero == 0 && pairPruning.dropEmptyVector(context))
+                    return;
+                context.write(key, new Text(FeaturesVectorBuilder.format(featuresVector, nonZeroIndexes, numOfNonZero, sparseVectors, label)));
             }
         }
 
+        /**
+         * Finds the label of a noun pair in the hypernym index, or in the hypernym map when there is no index.
+         *
+         * @param key the noun pair
+         * @return the label of the pair, or null if the pair is not in the hypernym list
+         */
+        private Boolean getLabel(Text key) {
+            if (hypernymIndex != null)
+                return hypernymIndex.getLabel(key);
+            return hypernymMap.get(key.toString());
+        }
+
         @Override
         public void cleanup(Context context) throws IOException {
+            // In dictionary mode the driver writes the number of features
+            if (vectorBuilder != null)
+                return;
             System.out.println("Features vector length: " + dependencyPathsMap.size());
             File numOfFeaturesFile = new File("numOfFeatures.txt");
             BufferedWriter bw = new BufferedWriter(new FileWriter(numOfFeaturesFile));
@@ -151,7 +277,7 @@ public class Step2 {
             bw.close();
             s3 = AmazonS3ClientBuilder.standard().withRegion("us-east-1").build();
             System.out.print("Uploading num of features file to S3... ");
-            s3.putObject(new PutObjectRequest("bucket1638974297772", "numOfFeatures.txt", numOfFeaturesFile));
+            s3.putObject(new PutObjectRequest("bucket1638974297772", getNumOfFeaturesKey(context.getConfiguration()), numOfFeaturesFile));
             System.out.println("Done.");
         }
 
@@ -170,7 +296,6 @@ public class Step2 {
                 featureVector[i] = entry.getValue();
                 entry.setValue(0L);  // Reset the value of the entry to 0
                 i++;
-                System.out.println("[DEBUG]: featureVector: " + Arrays.toString(featureVector));
             }
 
             return featureVector;
@@ -178,6 +303,19 @@ public class Step2 {
 
     }
 
+    /**
+     * Creates the builder of the features vectors of the tasks, from the feature dictionary or with feature hashing.
+     *
+     * @param conf the configuration of the job.
+     * @return the builder.
+     */
+    static FeaturesVectorBuilder createVectorBuilder(Configuration conf) throws IOException {
+        boolean sparseVectors = conf.getBoolean(SPARSE_VECTORS, false);
+        if (conf.getBoolean(FeatureHashing.FEATURE_HASHING, false))
+            return new FeaturesVectorBuilder(FeatureHashing.readFromCache(conf), sparseVectors);
+        return new FeaturesVectorBuilder(FeatureDictionary.readFromCache(), sparseVectors);
+    }
+
     /**
      * Main method for this Map-Reduce step. Processes the noun pairs and their dependency paths into a file which
      * contains the pairs and their features vector. This file would afterwards be processed with PostProcessor.java
@@ -188,17 +326,167 @@ public class Step2 {
      */
     public static void main(String[] args) throws Exception {
         Configuration conf = new Configuration();
+        Pipeline.setSharedDefaults(conf);
+        setDefaults(conf);
+        System.exit(runJobs(conf, new Path("s3://bucket1638974297772/output1"), new Path("s3://bucket1638974297772/output2")) ? 0 : 1);
+
+    }
+
+    /**
+     * Runs a job of this step for every feature space of the paths of Step1, one after the other. The jobs of the
+     * words space read and write under the "words" directory of the outputs of the steps.
+     *
+     * @param conf        the configuration of the jobs.
+     * @param step1Output the output directory of Step1.
+     * @param output      the output directory of the pos space, read by PostProcessor.
+     * @return true if every job completed.
+     * @throws Exception
+     */
+    static boolean runJobs(Configuration conf, Path step1Output, Path output) throws Exception {
+        for (String space : FeatureSpaces.getSpaces(conf)) {
+            Configuration spaceConf = new Configuration(conf);
+            spaceConf.set(FeatureSpaces.FEATURE_SPACE, space);
+            Job job = createJob(spaceConf, FeatureSpaces.getPath(step1Output, space), FeatureSpaces.getPath(output, space));
+            if (!job.waitForCompletion(true))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param conf the configuration of the job.
+     * @return the key of the number of features of the feature space of the job in the bucket.
+     */
+    static String getNumOfFeaturesKey(Configuration conf) {
+        return FeatureSpaces.getDirectory(conf.get(FeatureSpaces.FEATURE_SPACE, FeatureSpaces.POS)) + "numOfFeatures.txt";
+    }
+
+    /**
+     * Sets the default configuration of this step, the one shared with Step1 being set by Pipeline.
+     *
+     * @param conf the configuration of the job.
+     */
+    public static void setDefaults(Configuration conf) {
+        conf.setBoolean(FeatureDictionary.FEATURE_DICTIONARY, true);
+        conf.setInt(FeatureDictionary.STEP2_REDUCERS, FeatureDictionary.DEFAULT_STEP2_REDUCERS);
+        conf.setBoolean(SPARSE_VECTORS, true);
+        conf.setBoolean(HypernymIndex.HYPERNYM_INDEX, true);
+        conf.setInt(FeatureHashing.FEATURE_HASHING_BITS, FeatureHashing.DEFAULT_FEATURE_HASHING_BITS);
+        conf.setBoolean(FeatureHashing.FEATURE_HASHING_SIGNED, false);
+    }
+
+    /**
+     * Creates the job of this step. The feature dictionary and the hypernym index of the job are built when it is
+     * created, so Step1 must have completed.
+     *
+     * @param conf        the configuration of the job.
+     * @param step1Output the output directory of Step1, where the dictionary and the index are written as well.
+     * @param output      the output directory of the job, read by PostProcessor.
+     * @return the job.
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public static Job createJob(Configuration conf, Path step1Output, Path output) throws IOException, URISyntaxException {
         Job job = Job.getInstance(conf);
         job.setJarByClass(Step2.class);
-        job.setMapperClass(Mapper2.class);
-        job.setReducerClass(Reducer2.class);
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
-        job.setInputFormatClass(TextInputFormat.class);
-        job.setNumReduceTasks(1);
-        FileInputFormat.addInputPath(job, new Path("s3://bucket1638974297772/output1"));
-        FileOutputFormat.setOutputPath(job, new Path("s3://bucket1638974297772/output2"));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        IntermediateCompression.configureMapOutput(job);
+        if (conf.getBoolean(Step1.SPLIT_OUTPUTS, false)) {
+            // The pairs side output of Step1 is read directly and the vectors are written by the mappers
+            addHypernymIndex(job, step1Output);
+            addFeatures(job, step1Output);
+            job.setMapperClass(VectorMapper.class);
+            job.setInputFormatClass(SequenceFileInputFormat.class);
+            job.setNumReduceTasks(0);
+            FileInputFormat.addInputPath(job, new Path(step1Output, Step1.PAIRS_OUTPUT + "-r-*"));
+        } else {
+            job.setMapperClass(Mapper2.class);
+            job.setReducerClass(Reducer2.class);
+            job.setInputFormatClass(TextInputFormat.class);
+            if (conf.getBoolean(HypernymIndex.HYPERNYM_INDEX, false))
+                addHypernymIndex(job, step1Output);
+            if (conf.getBoolean(FeatureDictionary.FEATURE_DICTIONARY, false) || conf.getBoolean(FeatureHashing.FEATURE_HASHING, false)) {
+                addFeatures(job, step1Output);
+                job.setNumReduceTasks(conf.getInt(FeatureDictionary.STEP2_REDUCERS, FeatureDictionary.DEFAULT_STEP2_REDUCERS));
+            } else {
+                job.setNumReduceTasks(1);
+            }
+            FileInputFormat.addInputPath(job, new Path(step1Output, "part-r-*"));
+        }
+        FileOutputFormat.setOutputPath(job, output);
+        return job;
+    }
+
+    /**
+     * Builds the hypernym index from the hypernym list in S3 and adds it to the distributed cache of the job.
+     *
+     * @param job the job of this step.
+     * @param dir the directory the index is written to.
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static void addHypernymIndex(Job job, Path dir) throws IOException, URISyntaxException {
+        Configuration conf = job.getConfiguration();
+        AmazonS3 s3 = AmazonS3ClientBuilder.standard().withRegion("us-east-1").build();
+        S3Object object = s3.getObject(new GetObjectRequest(Reducer2.BUCKET_NAME, Reducer2.HYPERNYM_LIST));
+        Path indexPath = new Path(dir, HypernymIndex.CACHE_FILE_NAME);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(object.getObjectContent()))) {
+            StemCache stemCache = new StemCache(Stemmer.forCurrentThread(), conf.getInt(StemCache.STEM_CACHE_SIZE, StemCache.DEFAULT_STEM_CACHE_SIZE));
+            int numOfPairs = HypernymIndex.build(br, stemCache, indexPath, conf);
+            System.out.println("Hypernym index pairs: " + numOfPairs);
+        }
+        job.addCacheFile(new URI(indexPath.toUri() + "#" + HypernymIndex.CACHE_FILE_NAME));
+    }
 
+    /**
+     * Adds the features of the vectors to the distributed cache of the job: the merged sketch of the paths with
+     * feature hashing, or else the feature dictionary. The number of features is uploaded for PostProcessor, followed
+     * by the DPmin threshold and the number of features of every threshold of DPMIN_LIST.
+     *
+     * @param job         the job of this step.
+     * @param step1Output the output directory of Step1, where the features are written as well.
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static void addFeatures(Job job, Path step1Output) throws IOException, URISyntaxException {
+        int numOfFeatures;
+        StringBuilder thresholds = new StringBuilder();
+        if (job.getConfiguration().getBoolean(FeatureHashing.FEATURE_HASHING, false)) {
+            Path sketchPath = new Path(step1Output, FeatureHashing.CACHE_FILE_NAME);
+            FeatureHashing.mergeSketches(new Path(step1Output, FeatureHashing.NAMED_OUTPUT + "-r-*"), sketchPath, job.getConfiguration());
+            job.addCacheFile(new URI(sketchPath.toUri() + "#" + FeatureHashing.CACHE_FILE_NAME));
+            numOfFeatures = FeatureHashing.getNumFeatures(job.getConfiguration());
+        } else {
+            int[] numOfThresholdFeatures = addFeatureDictionary(job, step1Output);
+            numOfFeatures = numOfThresholdFeatures[0];
+            if (!job.getConfiguration().get(FeatureDictionary.DPMIN_LIST, "").trim().isEmpty()) {
+                int[] dpMins = FeatureDictionary.getThresholds(job.getConfiguration());
+                for (int i = 0; i < dpMins.length; i++)
+                    thresholds.append(dpMins[i]).append('\t').append(numOfThresholdFeatures[i]).append('\n');
+            }
+        }
+
+        System.out.println("Features vector length: " + numOfFeatures);
+        AmazonS3 s3 = AmazonS3ClientBuilder.standard().withRegion("us-east-1").build();
+        s3.putObject(Reducer2.BUCKET_NAME, getNumOfFeaturesKey(job.getConfiguration()), numOfFeatures + "\n" + thresholds);
+    }
+
+    /**
+     * Builds the feature dictionary from the dictionary side output of Step1 and adds it to the distributed cache of
+     * the job.
+     *
+     * @param job         the job of this step.
+     * @param step1Output the output directory of Step1, where the dictionary is written as well.
+     * @return the number of features of every DPmin threshold, the first one being the number of features in the
+     * dictionary.
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    private static int[] addFeatureDictionary(Job job, Path step1Output) throws IOException, URISyntaxException {
+        Path dictionaryPath = new Path(step1Output, FeatureDictionary.CACHE_FILE_NAME);
+        int[] numOfFeatures = FeatureDictionary.build(new Path(step1Output, FeatureDictionary.NAMED_OUTPUT + "-r-*"), dictionaryPath, job.getConfiguration());
+        job.addCacheFile(new URI(dictionaryPath.toUri() + "#" + FeatureDictionary.CACHE_FILE_NAME));
+        return numOfFeatures;
     }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Finds the paths from every noun down to the nouns right below it: every noun reachable from the root is paired with
+ * its nearest ancestor that is a noun, and the path runs from the ancestor down to the noun.
+ * <p>
+ * The walk up from a noun stops once the path has the maximal number of links without meeting a noun. It is counted
+ * as pruned then, although a few of those walks would have reached the root without meeting any noun.
+ */
+class SubtreePathExtractor implements PathExtractor {
+
+    private final int maxLinks;
+    private int[] pathNodes = new int[16];
+    private long prunedPaths;
+
+    /**
+     * @param maxLinks the maximal number of links of a path.
+     */
+    SubtreePathExtractor(int maxLinks) {
+        this.maxLinks = maxLinks;
+    }
+
+    @Override
+    public void extract(DependencyTree tree, PathConsumer consumer) throws IOException, InterruptedException {
+        for (int node = 0; node < tree.size(); node++) {
+            if (!tree.isNoun(node) || tree.getDepth(node) <= 0)
+                continue;
+            // Walk up from the noun to the first noun above it, collecting the path from its end
+            int length = 0;
+            int ancestor = node;
+            do {
+                if (length + 1 >= pathNodes.length)
+                    pathNodes = Arrays.copyOf(pathNodes, pathNodes.length * 2);
+                pathNodes[length++] = ancestor;
+                ancestor = tree.getParent(ancestor);
+            } while (ancestor >= 0 && !tree.isNoun(ancestor) && length < maxLinks);
+            if (ancestor < 0)
+                continue;
+            if (!tree.isNoun(ancestor)) {
+                prunedPaths++;
+                continue;
+            }
+            pathNodes[length++] = ancestor;
+            reverse(pathNodes, length);
+            consumer.accept(pathNodes, length);
+        }
+    }
+
+    @Override
+    public long getPrunedPaths() {
+        return prunedPaths;
+    }
+
+    static void reverse(int[] array, int length) {
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int tmp = array[i];
+            array[i] = array[j];
+            array[j] = tmp;
+        }
+    }
+}